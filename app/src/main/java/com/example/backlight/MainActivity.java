@@ -6,8 +6,8 @@ import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
-import android.text.InputFilter;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.MotionEvent;
 import android.widget.Button;
 import android.widget.EditText;
@@ -26,23 +26,32 @@ import androidx.core.content.ContextCompat;
 import com.example.backlight.activitys.BaseActivity;
 import com.example.backlight.activitys.MarqueeListActivity;
 import com.example.backlight.activitys.PixelDrawView;
+import com.example.backlight.activitys.PixelTextureView;
+import com.example.backlight.controller.FrameClock;
 import com.example.backlight.controller.SpeedController;
+import com.example.backlight.data.ColumnSource;
+import com.example.backlight.data.DotMatrix;
+import com.example.backlight.data.DotPalette;
+import com.example.backlight.utils.FontRegistry;
 import com.example.backlight.utils.SaveContentUtil;
+import com.example.backlight.utils.TextColumnSource;
 
 import java.io.IOException;
 
 public class MainActivity extends BaseActivity {
     private PixelDrawView drawView;
     private PixelDrawView previewView;
+    private PixelTextureView previewSurface;
     private SeekBar seekBarMarquee;
     private TextView tvMarqueeSpeed;
 
     private SpeedController speedController;
-    private Button btnDraw, btnErase, btnClear, btnInput, btnSave, btnSaveMarquee, btnViewSavedMarquee;
+    private Button btnDraw, btnErase, btnClear, btnGridSize, btnInput, btnSave, btnSaveMarquee, btnViewSavedMarquee;
     private Button btnMarquee, btnRotateCW, btnRotateCCW, btnFade, btnGradient;
 
-    private Handler animHandler = new Handler();
-    private Runnable animTask;
+    private static final int PREVIEW_DEBOUNCE_MS = 150; // 输入停顿多久后刷新实时预览
+
+    private FrameClock.Ticker animTicker;   // 跑马灯/旋转动画任务，由全局帧时钟驱动
 
     private int animType=0;//跑马灯：0，顺时针旋转：1，逆时针旋转：2
     private boolean isAnimRunning = false;
@@ -54,9 +63,11 @@ public class MainActivity extends BaseActivity {
     public void initView() {
         drawView = findViewById(R.id.drawView);
         previewView = findViewById(R.id.previewView);
+        previewSurface = findViewById(R.id.previewSurface);
         btnDraw = findViewById(R.id.btnDraw);
         btnErase = findViewById(R.id.btnErase);
         btnClear = findViewById(R.id.btnClear);
+        btnGridSize = findViewById(R.id.btnGridSize);
         btnInput = findViewById(R.id.btnInput);
         btnSave = findViewById(R.id.btnSave);
         btnSaveMarquee = findViewById(R.id.btnSaveMarquee);
@@ -97,6 +108,10 @@ public class MainActivity extends BaseActivity {
             previewView.resetAll();
             drawView.setMode(PixelDrawView.MODE_DRAW);
         });
+        btnGridSize.setOnClickListener(v -> {
+            stopAnimation(btnMarquee, "跑马灯");
+            showGridSizeDialog();
+        });
         btnInput.setOnClickListener(v -> {
             stopAnimation(btnMarquee, "跑马灯");
             showTextInputDialog();
@@ -131,6 +146,7 @@ public class MainActivity extends BaseActivity {
                 startAnimation(() -> previewView.scrollLeft(), 250);
                 isAnimRunning = true;
                 animType=1;
+                updatePreviewMotion(animType, 250);
                 btnMarquee.setText("停止跑马灯");
             } else {
                 stopAnimation(btnMarquee, "跑马灯");
@@ -141,6 +157,7 @@ public class MainActivity extends BaseActivity {
                 startAnimation(() -> previewView.addPreviewRotateDegree(5f), 20);
                 isAnimRunning = true;
                 animType=2;
+                updatePreviewMotion(animType, 20);
                 btnRotateCW.setText("停止旋转");
             } else {
                 stopAnimation(btnRotateCW, "顺时针旋转");
@@ -151,6 +168,7 @@ public class MainActivity extends BaseActivity {
                 startAnimation(() -> previewView.addPreviewRotateDegree(-5f), 20);
                 isAnimRunning = true;
                 animType=3;
+                updatePreviewMotion(animType, 20);
                 btnRotateCCW.setText("停止旋转");
             } else {
                 stopAnimation(btnRotateCCW, "逆时针旋转");
@@ -200,6 +218,8 @@ public class MainActivity extends BaseActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        // 后台预加载字体，第一次输入文字时无需等待解析字体文件
+        FontRegistry.preload(this);
         setContentView(R.layout.activity_main);
         initView();
         initListener();
@@ -213,17 +233,39 @@ public class MainActivity extends BaseActivity {
                 });
 
         previewView.setAsPreviewOf(drawView);
+        previewView.setRenderTarget(previewSurface);
         previewView.setMode(PixelDrawView.MODE_DRAW);
         previewView.clearDots();
     }
 
+    @Override
+    protected void onDestroy() {
+        // 跑马灯/旋转任务不跨界面实例保留，重建后由用户重新开始
+        if (animTicker != null) {
+            animTicker.stop();
+            animTicker = null;
+        }
+        previewView.stopPlayingFrames();
+        super.onDestroy();
+    }
+
     @Override
     protected void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
         outState.putString("dotStates", arrayToJson(drawView.getDotStatesCopy()));
-        if (drawView.hasFullTextStates()) {
-            outState.putString("fullTextStates", arrayToJson(drawView.getFullTextStatesCopy()));
-            outState.putInt("totalCols", drawView.getTotalCols());
+        outState.putInt("brightnessLevels", drawView.getBrightnessLevels());
+        DotPalette palette = drawView.getPalette();
+        if (palette != null) {
+            outState.putString("palette", palette.toJson());
+            outState.putInt("penIndex", drawView.getPenIndex());
+        }
+        ColumnSource full = drawView.getFullTextStatesCopy();
+        if (full instanceof TextColumnSource) {
+            // 输入的文字只保存原文，恢复时重新排版，长文字也不会撑大状态
+            outState.putString("fullText", ((TextColumnSource) full).getText());
+            outState.putInt("fullTextSize", ((TextColumnSource) full).getSizeMode());
+        } else if (full instanceof DotMatrix) {
+            outState.putString("fullTextStates", arrayToJson((DotMatrix) full));
         }
     }
 
@@ -232,46 +274,57 @@ public class MainActivity extends BaseActivity {
         super.onRestoreInstanceState(savedInstanceState);
         String dotJson = savedInstanceState.getString("dotStates");
         String fullJson = savedInstanceState.getString("fullTextStates");
-        int totalCols = savedInstanceState.getInt("totalCols", drawView.getCols());
+        String fullText = savedInstanceState.getString("fullText");
+        int levels = savedInstanceState.getInt("brightnessLevels", 2);
+        DotPalette palette = null;
+        try {
+            palette = DotPalette.fromJson(savedInstanceState.getString("palette"));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        int bitsPerDot;
+        if (palette != null) {
+            drawView.setPalette(palette);
+            previewView.setPalette(palette);
+            int pen = savedInstanceState.getInt("penIndex", 1);
+            drawView.setPenIndex(pen);
+            previewView.setPenIndex(pen);
+            bitsPerDot = DotPalette.BITS_PER_DOT;
+        } else {
+            drawView.setBrightnessLevels(levels);
+            previewView.setBrightnessLevels(levels);
+            bitsPerDot = DotMatrix.bitsPerDotFor(levels);
+        }
 
+        // 每份数据只解析/排版一次，预览与绘制区共用
         if (dotJson != null) {
-            drawView.setDotStates(jsonToArray(dotJson));
-            previewView.setDotStates(jsonToArray(dotJson));
+            DotMatrix dots = jsonToArray(dotJson, bitsPerDot);
+            drawView.setDotStates(dots);
+            previewView.setDotStates(dots);
         }
         if (fullJson != null) {
-            drawView.setFullTextStates(jsonToArray(fullJson), totalCols);
-            previewView.setFullTextStates(jsonToArray(fullJson), totalCols);
+            drawView.setFullTextStates(jsonToArray(fullJson, bitsPerDot));
+        }
+        if (fullText != null) {
+            // 排版结果有记忆，屏幕旋转后恢复时直接命中
+            drawView.drawTextOnGrid(fullText,
+                    savedInstanceState.getInt("fullTextSize", PixelDrawView.SIZE_MEDIUM));
         }
+        previewView.syncFrom(drawView);
         disableButton();
     }
 
-    private String arrayToJson(int[][] arr) {
+    private String arrayToJson(DotMatrix matrix) {
         try {
-            org.json.JSONArray outer = new org.json.JSONArray();
-            for (int[] row : arr) {
-                org.json.JSONArray inner = new org.json.JSONArray();
-                for (int v : row) {
-                    inner.put(v);
-                }
-                outer.put(inner);
-            }
-            return outer.toString();
+            return matrix.toJsonArray().toString();
         } catch (Exception e) {
             return null;
         }
     }
 
-    private int[][] jsonToArray(String json) {
+    private DotMatrix jsonToArray(String json, int bitsPerDot) {
         try {
-            org.json.JSONArray outer = new org.json.JSONArray(json);
-            int[][] arr = new int[outer.length()][outer.getJSONArray(0).length()];
-            for (int r = 0; r < outer.length(); r++) {
-                org.json.JSONArray inner = outer.getJSONArray(r);
-                for (int c = 0; c < inner.length(); c++) {
-                    arr[r][c] = inner.getInt(c);
-                }
-            }
-            return arr;
+            return DotMatrix.fromJsonArray(new org.json.JSONArray(json), bitsPerDot);
         } catch (Exception e) {
             return null;
         }
@@ -279,7 +332,7 @@ public class MainActivity extends BaseActivity {
 
     private void showTextInputDialog() {
         AlertDialog.Builder builder = new AlertDialog.Builder(MainActivity.this);
-        builder.setTitle("输入文字及大小（最多20字符）");
+        builder.setTitle("输入文字及大小");
 
         LinearLayout layout = new LinearLayout(MainActivity.this);
         layout.setOrientation(LinearLayout.VERTICAL);
@@ -287,7 +340,6 @@ public class MainActivity extends BaseActivity {
 
         final EditText inputField = new EditText(MainActivity.this);
         inputField.setHint("请输入文字");
-        inputField.setFilters(new InputFilter[]{new InputFilter.LengthFilter(20)});
         inputField.setBackgroundResource(R.drawable.rounded_edit_text);
         inputField.setPadding(20, 20, 20, 20);
         layout.addView(inputField);
@@ -300,28 +352,141 @@ public class MainActivity extends BaseActivity {
         rbMedium.setText("中");
         RadioButton rbSmall = new RadioButton(MainActivity.this);
         rbSmall.setText("小");
+        RadioButton rbPixel = new RadioButton(MainActivity.this);
+        rbPixel.setText("点阵");
         sizeGroup.addView(rbLarge);
         sizeGroup.addView(rbMedium);
         sizeGroup.addView(rbSmall);
+        sizeGroup.addView(rbPixel);
         rbMedium.setChecked(true);
         layout.addView(sizeGroup);
 
+        // 输入时实时预览：停顿片刻后再在后台排版，不阻塞输入
+        final boolean[] confirmed = {false};
+        final Runnable previewTask = () -> {
+            String text = inputField.getText().toString().trim();
+            if (text.isEmpty()) {
+                previewView.syncFrom(drawView);
+            } else {
+                previewView.previewTextAsync(text, getSelectedSizeMode(rbLarge, rbSmall, rbPixel));
+            }
+        };
+        inputField.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                inputField.removeCallbacks(previewTask);
+                inputField.postDelayed(previewTask, PREVIEW_DEBOUNCE_MS);
+            }
+        });
+        sizeGroup.setOnCheckedChangeListener((group, checkedId) -> {
+            inputField.removeCallbacks(previewTask);
+            inputField.postDelayed(previewTask, PREVIEW_DEBOUNCE_MS);
+        });
+
         builder.setView(layout);
         builder.setPositiveButton("确定", (dialog, which) -> {
             String text = inputField.getText().toString().trim();
             if (!text.isEmpty()) {
-                int sizeMode = PixelDrawView.SIZE_MEDIUM;
-                if (rbLarge.isChecked()) sizeMode = PixelDrawView.SIZE_LARGE;
-                if (rbSmall.isChecked()) sizeMode = PixelDrawView.SIZE_SMALL;
-                drawView.drawTextOnGrid(text, sizeMode);
-                previewView.drawTextOnGrid(text, sizeMode);
-                autoMarquee();
+                confirmed[0] = true;
+                // 后台排版完成后显示到绘制区，预览直接共用同一份结果
+                drawView.drawTextOnGridAsync(text, getSelectedSizeMode(rbLarge, rbSmall, rbPixel), () -> {
+                    previewView.syncFrom(drawView);
+                    autoMarquee();
+                });
             }
         });
         builder.setNegativeButton("取消", (dialog, which) -> dialog.dismiss());
+        builder.setOnDismissListener(dialog -> {
+            inputField.removeCallbacks(previewTask);
+            // 未确认时撤销实时预览，恢复为绘制区的内容
+            if (!confirmed[0]) previewView.syncFrom(drawView);
+        });
         builder.show();
     }
 
+    private int getSelectedSizeMode(RadioButton rbLarge, RadioButton rbSmall, RadioButton rbPixel) {
+        if (rbLarge.isChecked()) return PixelDrawView.SIZE_LARGE;
+        if (rbSmall.isChecked()) return PixelDrawView.SIZE_SMALL;
+        if (rbPixel.isChecked()) return PixelDrawView.SIZE_PIXEL;
+        return PixelDrawView.SIZE_MEDIUM;
+    }
+
+    // 选择点阵尺寸：{列数, 行数}，对应常见的 LED 屏规格
+    private static final int[][] GRID_SIZES = {
+            {PixelDrawView.DEFAULT_COLS, PixelDrawView.DEFAULT_ROWS}, {64, 16}, {128, 32}, {256, 64}
+    };
+
+    private void showGridSizeDialog() {
+        String[] items = new String[GRID_SIZES.length];
+        for (int i = 0; i < GRID_SIZES.length; i++) {
+            items[i] = GRID_SIZES[i][0] + " x " + GRID_SIZES[i][1];
+        }
+        new AlertDialog.Builder(MainActivity.this)
+                .setTitle("选择屏幕尺寸（列 x 行）")
+                .setItems(items, (dialog, which) -> {
+                    canvasMonitoring();
+                    drawView.setGridSize(GRID_SIZES[which][1], GRID_SIZES[which][0]);
+                    previewView.setGridSize(GRID_SIZES[which][1], GRID_SIZES[which][0]);
+                    disableButton();
+                })
+                .setNeutralButton("亮度级数", (dialog, which) -> showBrightnessDialog())
+                .show();
+    }
+
+    // 选择亮度级数：多级亮度时输入的文字按覆盖率取亮度，小字号也更清晰；最后一项为 RGB 屏的彩色模式
+    private static final int[] BRIGHTNESS_LEVELS = {2, 4, 16};
+
+    private void showBrightnessDialog() {
+        String[] items = {"2 级（亮灭）", "4 级", "16 级", "彩色"};
+        int checked = items.length - 1;
+        if (drawView.getPalette() == null) {
+            for (int i = 0; i < BRIGHTNESS_LEVELS.length; i++) {
+                if (BRIGHTNESS_LEVELS[i] == drawView.getBrightnessLevels()) checked = i;
+            }
+        }
+        new AlertDialog.Builder(MainActivity.this)
+                .setTitle("选择亮度级数")
+                .setSingleChoiceItems(items, checked, (dialog, which) -> {
+                    dialog.dismiss();
+                    if (which == BRIGHTNESS_LEVELS.length) {
+                        if (drawView.getPalette() == null) {
+                            canvasMonitoring();
+                            drawView.setPalette(DotPalette.standard());
+                            previewView.setPalette(DotPalette.standard());
+                            disableButton();
+                        }
+                        showPenColorDialog();
+                        return;
+                    }
+                    canvasMonitoring();
+                    drawView.setBrightnessLevels(BRIGHTNESS_LEVELS[which]);
+                    previewView.setBrightnessLevels(BRIGHTNESS_LEVELS[which]);
+                    disableButton();
+                })
+                .show();
+    }
+
+    // 彩色模式下选择画笔颜色，之后画的点和输入的文字都用这个颜色
+    private void showPenColorDialog() {
+        String[] items = {"白", "红", "绿", "蓝", "黄", "青", "品红"};
+        new AlertDialog.Builder(MainActivity.this)
+                .setTitle("选择画笔颜色")
+                .setSingleChoiceItems(items, drawView.getPenIndex() - 1, (dialog, which) -> {
+                    drawView.setPenIndex(which + 1);
+                    previewView.setPenIndex(which + 1);
+                    dialog.dismiss();
+                })
+                .show();
+    }
+
     private void showSaveMarqueeDialog() {
         AlertDialog.Builder builder = new AlertDialog.Builder(MainActivity.this);
         builder.setTitle("输入保存名称");
@@ -387,20 +552,27 @@ public class MainActivity extends BaseActivity {
     }
 
     private void startAnimation(Runnable action, int intervalMs) {
-        animTask = new Runnable() {
+        if (animTicker != null) animTicker.stop();
+        animTicker = new FrameClock.Ticker(previewView, intervalMs) {
             @Override
-            public void run() {
-                action.run();
-                animHandler.postDelayed(this, intervalMs);
+            protected void onTick(int steps) {
+                // 按实际流逝时间推进，间隔短于一帧时一帧内执行多步
+                for (int i = 0; i < steps; i++) {
+                    action.run();
+                }
             }
         };
-        animHandler.post(animTask);
+        animTicker.startNow();
     }
 
     private void stopAnimation(Button btn, String defaultText) {
-        animHandler.removeCallbacks(animTask);
+        if (animTicker != null) {
+            animTicker.stop();
+            animTicker = null;
+        }
         isAnimRunning = false;
         animType=0;
+        previewView.setMotion(0f, 0f);
         btn.setText(defaultText);
         previewView.resetOffset();
     }
@@ -424,34 +596,30 @@ public class MainActivity extends BaseActivity {
         if (previewView.isOutCanvas()) {
             startAnimation(() -> previewView.scrollLeft(), 250);
             isAnimRunning = true;
+            updatePreviewMotion(1, 250);
             btnMarquee.setText("停止跑马灯");
         }
     }
 
+    // 把动画速度告知预览，渲染线程据此在主线程忙时继续推进画面
+    private void updatePreviewMotion(int type, int intervalMs) {
+        float stepsPerSecond = 1000f / intervalMs;
+        if (type == 1) {
+            previewView.setMotion(stepsPerSecond, 0f);
+        } else if (type == 2) {
+            previewView.setMotion(0f, 5f * stepsPerSecond);
+        } else if (type == 3) {
+            previewView.setMotion(0f, -5f * stepsPerSecond);
+        }
+    }
+
     //更新速度方法
     private void updateAnimationSpeed(int newSpeedMs) {
-        animHandler.removeCallbacks(animTask); // 停掉旧的间隔
-        if (animType==1){
-            speedController.setMode(1);
-            startAnimation(() -> {
-                previewView.scrollLeft();
-                previewView.invalidate();
-            }, newSpeedMs);
-        }
-        if (animType==2){
-            speedController.setMode(2);
-            startAnimation(() -> {
-                previewView.addPreviewRotateDegree(5f);
-                previewView.invalidate();
-            }, newSpeedMs);
-        }
-        if (animType==3){
-            speedController.setMode(3);
-            startAnimation(() -> {
-                previewView.addPreviewRotateDegree(-5f);
-                previewView.invalidate();
-            }, newSpeedMs);
-        }
+        if (animType == 0 || animTicker == null) return;
+        speedController.setMode(animType);
+        // 只改间隔，已累计的时间保留，切换速度不会停顿或跳帧
+        animTicker.setInterval(newSpeedMs);
+        updatePreviewMotion(animType, newSpeedMs);
     }
 
 }
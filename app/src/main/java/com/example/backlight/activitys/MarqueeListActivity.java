@@ -23,8 +23,12 @@ import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.engine.DiskCacheStrategy;
 import com.example.backlight.R;
 import com.example.backlight.data.AppDatabase;
+import com.example.backlight.data.ColumnSource;
+import com.example.backlight.data.DotMatrix;
+import com.example.backlight.data.DotPalette;
 import com.example.backlight.data.MarqueeDao;
 import com.example.backlight.data.MarqueeEntity;
+import com.example.backlight.utils.SaveContentUtil;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -164,9 +168,15 @@ public class MarqueeListActivity extends BaseActivity {
                 JSONObject obj = new JSONObject();
                 obj.put("name", e.name);
                 obj.put("mode", e.mode);
-                obj.put("frames", new JSONArray(e.framesJson));
+                // 帧数据到播放时才解析
+                if (e.source != null) obj.put("source", e.source);
+                if (e.framesJson != null) obj.put("frames", e.framesJson);
                 obj.put("speed", e.speed);
                 obj.put("gifPath", e.gifPath); // 存 GIF 路径
+                obj.put("rows", e.gridRows);
+                obj.put("cols", e.gridCols);
+                obj.put("bitsPerDot", e.bitsPerDot);
+                if (e.palette != null) obj.put("palette", e.palette);
                 savedEffects.add(obj);
             } catch (Exception ex) {
                 ex.printStackTrace();
@@ -182,21 +192,24 @@ public class MarqueeListActivity extends BaseActivity {
             if (selected.has("speed")) {
                 playIntervalMs = selected.getInt("speed");
             }
-            JSONArray framesJson = selected.getJSONArray("frames");
-            List<int[][]> frames = new ArrayList<>();
-            for (int f = 0; f < framesJson.length(); f++) {
-                JSONArray frameRows = framesJson.getJSONArray(f);
-                int rows = frameRows.length();
-                int cols = frameRows.getJSONArray(0).length();
-                int[][] frame = new int[rows][cols];
-                for (int r = 0; r < rows; r++) {
-                    JSONArray rowJson = frameRows.getJSONArray(r);
-                    for (int c = 0; c < cols; c++) {
-                        frame[r][c] = rowJson.getInt(c);
-                    }
-                }
-                frames.add(frame);
+            marqueePreview.setGridSize(selected.optInt("rows", PixelDrawView.DEFAULT_ROWS),
+                    selected.optInt("cols", PixelDrawView.DEFAULT_COLS));
+            // 彩色跑马灯先换上它的调色板，再按数据源重新截取各帧
+            DotPalette palette = DotPalette.fromJson(selected.optString("palette", null));
+            marqueePreview.setPalette(palette);
+            if (selected.has("source")) {
+                ColumnSource source = SaveContentUtil.sourceFromJson(this, selected.getString("source"));
+                marqueePreview.playColumns(source, selected.optInt("cols", PixelDrawView.DEFAULT_COLS),
+                        playIntervalMs);
+                return;
             }
+            // 旧记录逐帧保存：按记录的每点位数解析，没有记录位数时才按帧内容推断（彩色固定为调色板下标）
+            int bitsPerDot = selected.optInt("bitsPerDot", 0);
+            if (bitsPerDot == 0 && palette != null) bitsPerDot = DotPalette.BITS_PER_DOT;
+            JSONArray framesJson = new JSONArray(selected.getString("frames"));
+            List<DotMatrix> frames = bitsPerDot > 0
+                    ? DotMatrix.framesFromJson(framesJson, bitsPerDot)
+                    : DotMatrix.framesFromJson(framesJson);
             marqueePreview.playFrames(frames, playIntervalMs);
         } catch (Exception e) {
             e.printStackTrace();
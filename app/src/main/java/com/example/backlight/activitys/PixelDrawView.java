@@ -3,22 +3,33 @@ package com.example.backlight.activitys;
 import android.annotation.SuppressLint;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Environment;
-import android.os.Handler;
 import android.provider.MediaStore;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
 import android.view.View;
-import android.graphics.Typeface;
 
+import com.example.backlight.R;
 import com.example.backlight.controller.FadeController;
+import com.example.backlight.controller.FrameClock;
 import com.example.backlight.controller.GradientController;
+import com.example.backlight.controller.StrokeController;
+import com.example.backlight.data.ColumnSource;
+import com.example.backlight.data.DotMatrix;
+import com.example.backlight.data.DotPalette;
+import com.example.backlight.utils.DotRenderer;
+import com.example.backlight.utils.DotStamp;
+import com.example.backlight.utils.TextColumnSource;
+import com.example.backlight.utils.TextRasterizer;
+import com.example.backlight.utils.RotationEngine;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -33,22 +44,42 @@ public class PixelDrawView extends View {
     public static final int SIZE_SMALL = 1;
     public static final int SIZE_MEDIUM = 2;
     public static final int SIZE_LARGE = 3;
+    public static final int SIZE_PIXEL = 4;   // 点阵字体，assets 中没有点阵字体时按中号显示
 
-    private int cols = 20;
-    private int rows = 15;
-    private float cellSize;
-    private float dotRadius;
-    private float[][][] dotCenters;
+    // 默认网格尺寸，可通过布局属性 gridRows/gridCols 或 setGridSize 修改
+    public static final int DEFAULT_ROWS = 15;
+    public static final int DEFAULT_COLS = 20;
+    // 文字排版的默认字距（列）；循环间隔默认取行数的一半
+    public static final int DEFAULT_GLYPH_GAP = 1;
 
-    private int[][] dotStates;
-    private int[][] fullTextStates;
+    private int cols = DEFAULT_COLS;
+    private int rows = DEFAULT_ROWS;
+    private float cellSize;
+    private int glyphGap = DEFAULT_GLYPH_GAP; // 字与字之间的空列数
+    private int loopGap = -1;                 // 文字末尾到下一轮开头的空列数，小于 0 时取行数的一半
+    private int bitsPerDot = 1;               // 每点位数：1=亮灭，2/4=4/16 级亮度，8=调色板下标
+    private DotPalette palette;               // 彩色模式的调色板，null 为灰度模式
+    private int penIndex = 1;                 // 彩色模式下画笔和文字的颜色下标
+
+    private DotMatrix dotStates;
+    private ColumnSource fullTextStates;  // 完整文字（手绘时即 dotStates，输入文字时按列流式生成）
     private int totalCols = cols;
     private int displayStartCol = 0;
 
-    private Paint blackPaint;
-    private Paint whitePaint;
-    private Paint bgPaint;
     private Paint whiteBgPaint;
+    private DotRenderer dotRenderer;   // 精灵图绘制器
+    private RotationEngine rotationEngine; // 旋转映射表缓存
+    private DotMatrix frameBuffer;     // 当前一屏要显示的点阵（复用）
+    // 保留的网格画面：只把与 cachedFrame 不同的点重绘进去，其余部分直接复用
+    private Bitmap gridCache;
+    private Canvas gridCanvas;
+    private DotMatrix cachedFrame;
+    private boolean gridCacheValid = false;
+    private final Rect dirtyRect = new Rect();
+    // 渲染模式：设置了 renderTarget 且其 Surface 就绪时，本视图只发布帧快照，由渲染线程绘制
+    private PixelTextureView renderTarget;
+    private float motionColsPerSecond = 0f;
+    private float motionDegreesPerSecond = 0f;
 
     private int mode = MODE_DRAW;
     private boolean editable = true;
@@ -56,12 +87,13 @@ public class PixelDrawView extends View {
     private int previewOffsetX = 0;
     private float previewRotateDegree = 0f;
 
-    private Handler playHandler;
-    private Runnable playRunnable;
+    private FrameClock.Ticker playTicker;
     private OnContentChangeListener contentChangeListener;
     //动画控制器
     private FadeController fadeController;
     private GradientController columnFadeController;
+    private StrokeController strokeController;
+    private final TextRasterizer textRasterizer = new TextRasterizer(); // 后台排版文字
     //判断文字长度是否超出画布长度
     private boolean isOutCanvas = false;
 
@@ -70,39 +102,150 @@ public class PixelDrawView extends View {
     }
 
     public PixelDrawView(Context context) { super(context); init(); }
-    public PixelDrawView(Context context, AttributeSet attrs) { super(context, attrs); init(); }
+    public PixelDrawView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.PixelDrawView);
+        rows = Math.max(1, a.getInt(R.styleable.PixelDrawView_gridRows, DEFAULT_ROWS));
+        cols = Math.max(1, a.getInt(R.styleable.PixelDrawView_gridCols, DEFAULT_COLS));
+        glyphGap = Math.max(0, a.getInt(R.styleable.PixelDrawView_glyphGap, DEFAULT_GLYPH_GAP));
+        loopGap = a.getInt(R.styleable.PixelDrawView_loopGap, -1);
+        bitsPerDot = DotMatrix.bitsPerDotFor(a.getInt(R.styleable.PixelDrawView_brightnessLevels, 2));
+        a.recycle();
+        init();
+    }
 
     private void init() {
-        dotStates = new int[rows][cols];
-
         whiteBgPaint = new Paint();
         whiteBgPaint.setColor(Color.WHITE);
 
-        bgPaint = new Paint();
-        bgPaint.setColor(Color.GRAY);
-
-        blackPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        blackPaint.setColor(Color.BLACK);
+        dotRenderer = new DotRenderer();
+        allocateGrid();
+        rotationEngine = new RotationEngine();
 
-        whitePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        whitePaint.setColor(Color.WHITE);
-
-        dotCenters = new float[rows][cols][2];
         fadeController = new FadeController(this);
         columnFadeController = new GradientController(this);
+        strokeController = new StrokeController(this);
+    }
+
+    // 按当前行列数和每点位数分配点阵缓冲
+    private void allocateGrid() {
+        dotStates = new DotMatrix(rows, cols, bitsPerDot);
+        frameBuffer = new DotMatrix(rows, cols, bitsPerDot);
+        cachedFrame = new DotMatrix(rows, cols, bitsPerDot);
+        applyRendererFormat();
+    }
+
+    // 绘制器按当前模式取调色板：彩色用本视图的调色板，灰度按级数生成
+    private void applyRendererFormat() {
+        if (palette != null) {
+            dotRenderer.setPalette(palette);
+        } else {
+            dotRenderer.setBitsPerDot(bitsPerDot);
+        }
+        gridCacheValid = false;
+    }
+
+    /**
+     * 修改网格尺寸（如 64x16、128x32、256x64 的 LED 屏），会清空当前内容
+     * @param rows 行数
+     * @param cols 列数
+     */
+    public void setGridSize(int rows, int cols) {
+        setGridFormat(rows, cols, bitsPerDot);
+    }
+
+    /**
+     * 设置亮度级数，会清空当前内容；多级亮度时输入的文字按覆盖率取亮度，边缘更平滑
+     * @param levels 2（亮灭）、4 或 16
+     */
+    public void setBrightnessLevels(int levels) {
+        palette = null;
+        setGridFormat(rows, cols, DotMatrix.bitsPerDotFor(levels));
+    }
+
+    /** 灰度模式的亮度级数，彩色模式返回 2 **/
+    public int getBrightnessLevels() { return palette != null ? 2 : 1 << bitsPerDot; }
+
+    /**
+     * 切换到彩色模式：每点存放调色板下标（8 位），从灰度切换过来时会清空当前内容；
+     * 只更换调色板时保留内容，各点按新调色板的颜色显示
+     * @param palette 调色板，null 恢复为亮灭两级的灰度模式
+     */
+    public void setPalette(DotPalette palette) {
+        if (palette == null) {
+            if (this.palette != null) setBrightnessLevels(2);
+            return;
+        }
+        this.palette = palette;
+        penIndex = Math.min(penIndex, palette.size() - 1);
+        if (bitsPerDot != DotPalette.BITS_PER_DOT) {
+            setGridFormat(rows, cols, DotPalette.BITS_PER_DOT);
+        } else {
+            applyRendererFormat();
+            invalidate();
+        }
+    }
+
+    public DotPalette getPalette() { return palette; }
+
+    /**
+     * 彩色模式下画笔和之后输入文字使用的颜色
+     * @param index 调色板下标（1 ~ size-1）
+     */
+    public void setPenIndex(int index) {
+        int max = palette != null ? palette.size() - 1 : 1;
+        penIndex = Math.max(1, Math.min(index, max));
+    }
+
+    public int getPenIndex() { return penIndex; }
+
+    private void setGridFormat(int rows, int cols, int bitsPerDot) {
+        if (rows <= 0 || cols <= 0) {
+            throw new IllegalArgumentException("grid size must be positive: " + rows + "x" + cols);
+        }
+        if (rows == this.rows && cols == this.cols && bitsPerDot == this.bitsPerDot) {
+            applyRendererFormat();
+            return;
+        }
+        textRasterizer.cancel();
+        columnFadeController.stopColumnFade();
+        stopPlayingFrames();
+        this.rows = rows;
+        this.cols = cols;
+        this.bitsPerDot = bitsPerDot;
+        allocateGrid();
+        fullTextStates = null;
+        totalCols = cols;
+        displayStartCol = 0;
+        previewOffsetX = 0;
+        previewRotateDegree = 0f;
+        isOutCanvas = false;
+        updateGeometry(getWidth(), getHeight());
+        invalidate();
+        updateAfterDraw();
     }
 
+    public int getRows() { return rows; }
+
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
+        updateGeometry(w, h);
+    }
+
+    // 按视图尺寸和行列数计算格子大小，并重建保留画面
+    private void updateGeometry(int w, int h) {
         cellSize = Math.min(w / (cols * 1f), h / (rows * 1f));
-        dotRadius = cellSize * 0.4f;
-        for (int r = 0; r < rows; r++) {
-            for (int c = 0; c < cols; c++) {
-                dotCenters[r][c][0] = cellSize * (c + 0.5f);
-                dotCenters[r][c][1] = cellSize * (r + 0.5f);
-            }
+        dotRenderer.setGeometry(rows, cols, cellSize);
+        if (dotRenderer.isReady()) {
+            gridCache = Bitmap.createBitmap(dotRenderer.getGridWidth(), dotRenderer.getGridHeight(),
+                    Bitmap.Config.ARGB_8888);
+            gridCanvas = new Canvas(gridCache);
+        } else {
+            gridCache = null;
+            gridCanvas = null;
         }
+        gridCacheValid = false;
     }
 
     @Override
@@ -111,189 +254,224 @@ public class PixelDrawView extends View {
         // 绘制白色背景
         canvas.drawRect(0, 0, getWidth(), getHeight(), whiteBgPaint);
 
-        // 绘制网格背景
-        float gridWidth = cellSize * cols;
-        float gridHeight = cellSize * rows;
-        canvas.drawRect(0, 0, gridWidth, gridHeight, bgPaint);
-
         // 获取数据源：普通模式 / 预览模式
-        int[][] srcData;
-        int srcCols;
+        ColumnSource srcData;
         if (isPreview && fullTextStates != null) {
             if (getPreviewWorkingStates() != null) {
                 srcData = getPreviewWorkingStates();
-                srcCols = totalCols;
             } else {
                 srcData = fullTextStates;
-                srcCols = totalCols;
             }
         } else {
             srcData = dotStates;
-            srcCols = cols;
         }
 
+        if (renderTarget != null && renderTarget.isRendering()) {
+            // 快照在发布时直接截取数据源，不复制整个数据源；画面没变时不发布
+            renderTarget.publish(srcData, palette, cols, getVisibleStartCol(srcData), previewRotateDegree,
+                    isFading() ? fadeController.getFadeFilter() : null,
+                    motionColsPerSecond, motionDegreesPerSecond);
+            return;
+        }
+        if (!dotRenderer.isReady()) return;
+
+        DotMatrix frame = composeVisibleFrame(srcData, frameBuffer);
+        if (!isFading()) {
+            // 只把变化的点画进保留画面，再整体贴到屏幕上
+            if (!gridCacheValid) {
+                dotRenderer.drawFrame(gridCanvas, frame);
+                gridCacheValid = true;
+            } else {
+                dotRenderer.drawChanges(gridCanvas, frame, cachedFrame);
+            }
+            cachedFrame.copyFrom(frame);
+            canvas.drawBitmap(gridCache, 0, 0, null);
+            return;
+        }
 
-        // 如果有旋转角度 → 使用旋转后的数据
-        if (previewRotateDegree != 0f) {
-            srcData = getRotatedStates(srcData, srcCols, previewRotateDegree);
+        // 淡入淡出：先画全灭网格，再用当前级别的调暗画笔贴各点颜色的圆点
+        dotRenderer.drawBackground(canvas);
+        dotRenderer.drawLitDots(canvas, frame, fadeController.getFadePaint());
+    }
+
+    /**
+     * 设置渲染目标：目标 Surface 就绪后改由其渲染线程绘制，传 null 恢复本视图绘制
+     */
+    public void setRenderTarget(PixelTextureView target) {
+        if (renderTarget != null) renderTarget.setSource(null);
+        renderTarget = target;
+        if (target != null) target.setSource(this);
+        invalidate();
+    }
+
+    /**
+     * 告知当前动画速度，渲染线程在主线程卡顿时据此外推画面
+     * @param colsPerSecond 跑马灯每秒滚动列数
+     * @param degreesPerSecond 每秒旋转角度
+     */
+    public void setMotion(float colsPerSecond, float degreesPerSecond) {
+        motionColsPerSecond = colsPerSecond;
+        motionDegreesPerSecond = degreesPerSecond;
+        invalidate();
+    }
+
+    // 当前预览从数据源第几列开始显示
+    private int getVisibleStartCol(ColumnSource srcData) {
+        if (isPreview && previewOffsetX != 0) {
+            return previewOffsetX;
+        } else if (isPreview && srcData.getCols() > cols) {
+            return displayStartCol;
         }
+        return 0;
+    }
 
-        // 按行列绘制点阵
-        for (int r = 0; r < rows; r++) {
-            for (int c = 0; c < cols; c++) {
-                int srcCol;
-                if (isPreview && previewOffsetX != 0) {
-                    srcCol = (c + previewOffsetX) % srcCols;
-                } else if (isPreview && srcCols > cols) {
-                    srcCol = Math.min(displayStartCol + c, srcCols - 1);
-                } else {
-                    srcCol = c;
-                }
-
-                float cx = dotCenters[r][c][0];
-                float cy = dotCenters[r][c][1];
-
-                if (srcData[r][srcCol] == 0) {
-                    // 黑点保持原样
-                    canvas.drawCircle(cx, cy, dotRadius, blackPaint);
-                } else {
-                    // 白点根据是否淡入淡出来决定用什么颜色
-                    if (isFading()) {
-                        // 插值计算黑白渐变颜色
-                        int fadeColor = interpolateColor(Color.BLACK, Color.WHITE);
-                        Paint fadePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-                        fadePaint.setColor(fadeColor);
-                        canvas.drawCircle(cx, cy, dotRadius, fadePaint);
-                    } else {
-                        // 普通白点
-                        canvas.drawCircle(cx, cy, dotRadius, whitePaint);
-                    }
-                }
-            }
+    // 按当前预览偏移从数据源截取一屏写入 out，有旋转角度时按旋转映射表取点
+    private DotMatrix composeVisibleFrame(ColumnSource srcData, DotMatrix out) {
+        if (previewRotateDegree != 0f) {
+            rotationEngine.rotate(srcData, getVisibleStartCol(srcData), previewRotateDegree, out);
+        } else {
+            srcData.window(out, getVisibleStartCol(srcData));
         }
+        return out;
     }
 
+    // 只刷新网格中第 c0~c1 列、第 r0~r1 行所占的区域
+    private void invalidateCells(int r0, int r1, int c0, int c1) {
+        dirtyRect.set((int) (cellSize * c0), (int) (cellSize * r0),
+                (int) Math.ceil(cellSize * (c1 + 1)) + 1, (int) Math.ceil(cellSize * (r1 + 1)) + 1);
+        invalidate(dirtyRect);
+    }
 
-    private int[][] getRotatedStates(int[][] src, int srcCols, float degree) {
-        int[][] rotated = new int[rows][srcCols];
-        double radians = Math.toRadians(degree);
-        float centerX = (srcCols - 1) / 2f;
-        float centerY = (rows - 1) / 2f;
-
-        for (int r = 0; r < rows; r++) {
-            for (int c = 0; c < srcCols; c++) {
-                if (src[r][c] != 0) {
-                    float dx = c - centerX;
-                    float dy = r - centerY;
-                    float rotatedX = (float) (dx * Math.cos(radians) - dy * Math.sin(radians));
-                    float rotatedY = (float) (dx * Math.sin(radians) + dy * Math.cos(radians));
-                    int newC = Math.round(rotatedX + centerX);
-                    int newR = Math.round(rotatedY + centerY);
-                    if (newR >= 0 && newR < rows && newC >= 0 && newC < srcCols) {
-                        rotated[newR][newC] = src[r][c];
-                    }
-                }
-            }
+    /**
+     * 数据源中某一列发生变化时调用，只刷新它在屏幕上对应的那一列
+     * 旋转时变化位置无法简单对应，退化为整体刷新
+     */
+    public void invalidateSourceColumn(int srcCol) {
+        ColumnSource srcData = fullTextStates != null ? fullTextStates : dotStates;
+        int srcCols = srcData.getCols();
+        if (previewRotateDegree != 0f || srcCols < cols || cellSize <= 0f) {
+            invalidate();
+            return;
+        }
+        int c = Math.floorMod(srcCol - getVisibleStartCol(srcData), srcCols);
+        if (c < cols) {
+            invalidateCells(0, rows - 1, c, c);
         }
-        return rotated;
     }
 
+
     private void updateAfterDraw() {
         if (contentChangeListener != null) {
             contentChangeListener.onContentEmpty(isEmpty());
         }
     }
 
-    // 恢复普通点阵数据
-    public void setDotStates(int[][] states) {
-        if (states != null && states.length == rows && states[0].length == cols) {
-            for (int r = 0; r < rows; r++) {
-                System.arraycopy(states[r], 0, dotStates[r], 0, cols);
-            }
-            invalidate();
-        }
+    // 恢复普通点阵数据，尺寸不同时网格随之调整
+    public void setDotStates(DotMatrix states) {
+        if (states == null) return;
+        setGridSize(states.getRows(), states.getCols());
+        dotStates.copyFrom(states);
+        invalidate();
     }
 
     // 恢复完整文字帧数据
-    public void setFullTextStates(int[][] states, int totalCols) {
-        if (states != null) {
+    public void setFullTextStates(ColumnSource states) {
+        if (states != null && states.getRows() == rows) {
             this.fullTextStates = states;
-            this.totalCols = totalCols;
-            displayStartCol = totalCols > cols ? (totalCols - cols) / 2 : 0;
-            for (int r = 0; r < rows; r++) {
-                for (int c = 0; c < cols; c++) {
-                    dotStates[r][c] = fullTextStates[r][Math.min(displayStartCol + c, totalCols - 1)];
-                }
-            }
+            this.totalCols = states.getCols();
+            isOutCanvas = totalCols > cols;
+            showCenterWindow();
             invalidate();
         }
     }
 
+    // 把完整文字帧居中的一段同步到当前网格
+    private void showCenterWindow() {
+        displayStartCol = totalCols > cols ? (totalCols - cols) / 2 : 0;
+        if (totalCols >= cols) {
+            fullTextStates.window(dotStates, displayStartCol);
+        } else {
+            dotStates.clear();
+            fullTextStates.copyColumns(0, dotStates, 0, totalCols);
+        }
+    }
+
     public void drawTextOnGrid(String text, int sizeMode) {
-        clearDots();
-        fullTextStates = null;
+        textRasterizer.cancel();
         if (text == null || text.isEmpty()) {
+            clearDots();
+            fullTextStates = null;
             invalidate();
             return;
         }
+        // 文字不整段光栅化，显示到哪一段才按列拼接缓存的字形，长度不限
+        applyText(TextColumnSource.obtain(getContext(), text, sizeMode, rows, cols, glyphGap, getLoopGap(),
+                bitsPerDot, getInk()));
+    }
 
-        // 字号缩放因子
-        float scaleFactor;
-        if (sizeMode == SIZE_LARGE) scaleFactor = 1.4f;
-        else if (sizeMode == SIZE_SMALL) scaleFactor = 0.9f;
-        else scaleFactor = 1.1f;
-
-        // 高分辨率绘制尺寸
-        int highResCols = cols * 10;
-        int highResRows = rows * 10;
-
-        Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        textPaint.setColor(Color.WHITE);
-        textPaint.setStyle(Paint.Style.FILL);
-        textPaint.setTextSize(highResRows * scaleFactor);
-
-        // ✅ 设置粗体或自定义字体
-        // 系统粗体
-//        textPaint.setTypeface(Typeface.create(Typeface.DEFAULT, Typeface.BOLD));
+    /**
+     * 设置文字排版的间距，下次输入文字时生效
+     * @param glyphGap 字与字之间的空列数
+     * @param loopGap 循环滚动时文字末尾到下一轮开头的空列数，小于 0 时取行数的一半
+     */
+    public void setTextSpacing(int glyphGap, int loopGap) {
+        this.glyphGap = Math.max(0, glyphGap);
+        this.loopGap = loopGap;
+    }
 
-        // 如果你有自定义字体文件（放在 assets/fonts/msyh.ttf）
-         Typeface customTypeface = Typeface.createFromAsset(getContext().getAssets(), "fonts/MiSans-Medium.ttf");
-         textPaint.setTypeface(customTypeface);
+    private int getLoopGap() {
+        return loopGap < 0 ? rows / 2 : loopGap;
+    }
 
-        textPaint.setTextAlign(Paint.Align.LEFT);
+    // 按当前网格格式和间距提交后台排版
+    private void submitText(String text, int sizeMode, TextRasterizer.Callback callback) {
+        textRasterizer.submit(getContext(), text, sizeMode, rows, cols, glyphGap, getLoopGap(), bitsPerDot,
+                getInk(), callback);
+    }
 
-        float textWidthPx = textPaint.measureText(text);
-        totalCols = Math.max(cols, Math.round(textWidthPx / 10f));
-        isOutCanvas = totalCols > cols;
+    // 文字颜色：彩色模式为画笔颜色下标，灰度模式为 0（按覆盖率取亮度）
+    private int getInk() {
+        return palette != null ? penIndex : 0;
+    }
 
-        // 高分辨率位图绘制
-        Bitmap highResBitmap = Bitmap.createBitmap(totalCols * 10, highResRows, Bitmap.Config.ARGB_8888);
-        Canvas highResCanvas = new Canvas(highResBitmap);
-        highResCanvas.drawColor(Color.BLACK);
-        Paint.FontMetrics fm = textPaint.getFontMetrics();
-        float baseline = (highResRows - (fm.descent - fm.ascent)) / 2f - fm.ascent;
-        highResCanvas.drawText(text, 0, baseline, textPaint);
-
-        // 采样成点阵
-        fullTextStates = new int[rows][totalCols];
-        for (int r = 0; r < rows; r++) {
-            for (int c = 0; c < totalCols; c++) {
-                int px = c * 10 + 5;
-                int py = r * 10 + 5;
-                int color = highResBitmap.getPixel(px, py);
-                fullTextStates[r][c] = (Color.red(color) > 128) ? 1 : 0;
-            }
+    /**
+     * 在后台排版文字，完成后显示到网格；新的请求会作废还没完成的旧请求
+     * @param onDone 显示完成后在主线程调用，可为 null
+     */
+    public void drawTextOnGridAsync(String text, int sizeMode, Runnable onDone) {
+        if (text == null || text.isEmpty()) {
+            drawTextOnGrid(text, sizeMode);
+            if (onDone != null) onDone.run();
+            return;
         }
-        highResBitmap.recycle();
+        submitText(text, sizeMode, source -> {
+            if (source.getRows() != rows || source.getBitsPerDot() != bitsPerDot) return; // 排版期间网格格式已改变
+            applyText(source);
+            if (onDone != null) onDone.run();
+        });
+    }
 
-        // 显示到当前网格
-        displayStartCol = totalCols > cols ? (totalCols - cols) / 2 : 0;
-        for (int r = 0; r < rows; r++) {
-            for (int c = 0; c < cols; c++) {
-                dotStates[r][c] = fullTextStates[r][Math.min(displayStartCol + c, totalCols - 1)];
-            }
-        }
+    /**
+     * 输入过程中的实时预览：后台排版后只替换显示的文字，不改动点阵数据
+     */
+    public void previewTextAsync(String text, int sizeMode) {
+        submitText(text, sizeMode, source -> {
+            if (source.getRows() != rows || source.getBitsPerDot() != bitsPerDot) return;
+            fullTextStates = source;
+            totalCols = source.getCols();
+            isOutCanvas = totalCols > cols;
+            displayStartCol = totalCols > cols ? (totalCols - cols) / 2 : 0;
+            invalidate();
+        });
+    }
 
+    // 把排好的文字显示到当前网格
+    private void applyText(ColumnSource source) {
+        clearDots();
+        fullTextStates = source;
+        totalCols = source.getCols();
+        isOutCanvas = totalCols > cols;
+        showCenterWindow();
         invalidate();
         updateAfterDraw();
     }
@@ -303,19 +481,15 @@ public class PixelDrawView extends View {
     public void setMode(int m) { mode = m; }
     public boolean hasFullTextStates() { return fullTextStates != null; }
 
-    public int[][] getFullTextStatesCopy() {
+    public ColumnSource getFullTextStatesCopy() {
         if (fullTextStates == null) return null;
-        int[][] copy = new int[fullTextStates.length][fullTextStates[0].length];
-        for (int r = 0; r < fullTextStates.length; r++) {
-            System.arraycopy(fullTextStates[r], 0, copy[r], 0, fullTextStates[r].length);
-        }
-        return copy;
+        return fullTextStates.copy();
     }
 
     public int getTotalCols() { return totalCols; }
     public int getCols() { return cols; }
     public void clearDots() {
-        for (int[] row : dotStates) java.util.Arrays.fill(row, 0);
+        dotStates.clear();
         invalidate();
         updateAfterDraw();
     }
@@ -326,29 +500,38 @@ public class PixelDrawView extends View {
     public void setAsPreviewOf(PixelDrawView target) {
         isPreview = true;
         this.editable = false;
+        palette = target.palette;
+        penIndex = target.penIndex;
+        setGridFormat(target.rows, target.cols, target.bitsPerDot);
+        setTextSpacing(target.glyphGap, target.loopGap);
         target.setOnTouchListener((v, e) -> {
             v.onTouchEvent(e);
-            this.dotStates = target.getDotStates();
-            this.fullTextStates = target.fullTextStates;
-            this.totalCols = target.totalCols;
-            this.displayStartCol = target.displayStartCol;
-            this.invalidate();
+            syncFrom(target);
             return true;
         });
     }
 
+    /**
+     * 预览与目标视图的内容同步（共享同一份数据），并丢弃尚未完成的实时预览
+     */
+    public void syncFrom(PixelDrawView target) {
+        textRasterizer.cancel();
+        this.dotStates = target.getDotStates();
+        this.fullTextStates = target.fullTextStates;
+        this.totalCols = target.totalCols;
+        this.displayStartCol = target.displayStartCol;
+        this.isOutCanvas = target.isOutCanvas;
+        this.invalidate();
+    }
+
     /** 获取当前点阵状态（直接引用） **/
-    public int[][] getDotStates() {
+    public DotMatrix getDotStates() {
         return dotStates;
     }
 
     /** 获取当前点阵状态的副本 **/
-    public int[][] getDotStatesCopy() {
-        int[][] copy = new int[dotStates.length][];
-        for (int i = 0; i < dotStates.length; i++) {
-            copy[i] = dotStates[i].clone();
-        }
-        return copy;
+    public DotMatrix getDotStatesCopy() {
+        return dotStates.copy();
     }
 
 
@@ -412,158 +595,125 @@ public class PixelDrawView extends View {
     @Override
     public boolean onTouchEvent(MotionEvent event) {
         if (!editable || isPreview) return false;
-        if (event.getAction() == MotionEvent.ACTION_DOWN ||
-                event.getAction() == MotionEvent.ACTION_MOVE) {
-            int[] nearest = findNearestDot(event.getX(), event.getY());
-            if (nearest != null) {
-                dotStates[nearest[0]][nearest[1]] = (mode == MODE_DRAW ? 1 : 0);
-                invalidate();
-                updateAfterDraw();
-                fullTextStates = dotStates;
-                totalCols = cols;
-            }
-        }
+        int pen = palette != null ? penIndex : dotStates.getMaxLevel();
+        strokeController.onTouchEvent(event, mode == MODE_DRAW ? pen : 0);
         return true;
     }
 
-    private int[] findNearestDot(float x, float y) {
-        for (int r = 0; r < rows; r++) {
-            for (int c = 0; c < cols; c++) {
-                float dx = x - dotCenters[r][c][0];
-                float dy = y - dotCenters[r][c][1];
-                if (Math.sqrt(dx * dx + dy * dy) <= dotRadius * 2.5) {
-                    return new int[]{r, c};
-                }
-            }
-        }
-        return null;
-    }
-
-    public Bitmap renderFrameToBitmap(int[][] frameData) {
-        int bmpWidth = (int) (cellSize * cols);
-        int bmpHeight = (int) (cellSize * rows);
-        Bitmap bmp = Bitmap.createBitmap(bmpWidth, bmpHeight, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bmp);
-        canvas.drawRect(0, 0, bmpWidth, bmpHeight, bgPaint);
-        for (int r = 0; r < rows; r++) {
-            for (int c = 0; c < cols; c++) {
-                float cx = cellSize * (c + 0.5f);
-                float cy = cellSize * (r + 0.5f);
-                if (frameData[r][c] == 0) {
-                    canvas.drawCircle(cx, cy, dotRadius, blackPaint);
-                } else {
-                    canvas.drawCircle(cx, cy, dotRadius, whitePaint);
-                }
-            }
-        }
-        return bmp;
+    /**
+     * 笔画控制器提交一批变化后调用：只刷新变化范围，并通知一次内容变化
+     */
+    public void onStrokeApplied(int r0, int r1, int c0, int c1) {
+        fullTextStates = dotStates;
+        totalCols = cols;
+        invalidateCells(r0, r1, c0, c1);
+        updateAfterDraw();
+    }
+
+    /**
+     * 触摸坐标直接换算为格子下标（r * cols + c），与网格大小无关
+     * @return 下标，落在网格外返回 -1
+     */
+    public int cellIndexAt(float x, float y) {
+        if (cellSize <= 0f || x < 0f || y < 0f) return -1;
+        int c = (int) (x / cellSize);
+        int r = (int) (y / cellSize);
+        if (r >= rows || c >= cols) return -1;
+        return r * cols + c;
+    }
+
+    public Bitmap renderFrameToBitmap(DotMatrix frameData) {
+        return dotRenderer.renderToBitmap(frameData);
+    }
+
+    /** 导出 GIF 用的点阵印章，格子尚未布局时返回 null **/
+    public DotStamp createDotStamp() {
+        return dotRenderer.createStamp();
     }
 
     // 播放帧动画
-    public void playFrames(final List<int[][]> frames, final int intervalMs) {
+    public void playFrames(final List<DotMatrix> frames, final int intervalMs) {
         if (frames == null || frames.isEmpty()) return;
         stopPlayingFrames(); // 先停掉之前的
-        playHandler = new android.os.Handler();
+        // 帧尺寸与当前网格不同时，网格按帧调整
+        DotMatrix first = frames.get(0);
+        setGridFormat(first.getRows(), first.getCols(), first.getBitsPerDot());
         final int[] index = {0};
-        playRunnable = new Runnable() {
+        playTicker = new FrameClock.Ticker(this, intervalMs) {
             @Override
-            public void run() {
-                if (index[0] >= frames.size()) {
-                    index[0] = 0;
-                }
-                int[][] frameData = frames.get(index[0]);
+            protected void onTick(int steps) {
+                // 间隔短于一帧时直接跳过中间帧，只显示最新的一帧
+                index[0] = (index[0] + steps - 1) % frames.size();
+                DotMatrix frameData = frames.get(index[0]);
                 // 更新显示
-                for (int r = 0; r < rows; r++) {
-                    for (int c = 0; c < cols; c++) {
-                        dotStates[r][c] = frameData[r][c];
-                    }
-                }
+                frameData.copyColumns(0, dotStates, 0, Math.min(cols, frameData.getCols()));
                 invalidate();
                 index[0]++;
-                playHandler.postDelayed(this, intervalMs);
             }
         };
-        playHandler.post(playRunnable);
+        playTicker.startNow();
+    }
+
+    /**
+     * 按数据源播放跑马灯：第 k 帧为从第 k 列起的一屏，与导出的 GIF 一致，帧不预先生成
+     * @param displayCols 一屏的列数
+     */
+    public void playColumns(final ColumnSource source, int displayCols, final int intervalMs) {
+        if (source == null) return;
+        stopPlayingFrames();
+        setGridFormat(source.getRows(), displayCols, source.getBitsPerDot());
+        final int totalCols = source.getCols();
+        final int[] index = {0};
+        playTicker = new FrameClock.Ticker(this, intervalMs) {
+            @Override
+            protected void onTick(int steps) {
+                // 间隔短于一帧时直接跳过中间帧，只显示最新的一帧
+                index[0] = (index[0] + steps - 1) % totalCols;
+                source.window(dotStates, index[0]);
+                invalidate();
+                index[0]++;
+            }
+        };
+        playTicker.startNow();
     }
 
     // 停止播放帧动画
     public void stopPlayingFrames() {
-        if (playHandler != null && playRunnable != null) {
-            playHandler.removeCallbacks(playRunnable);
-            playRunnable = null;
-            playHandler = null;
+        if (playTicker != null) {
+            playTicker.stop();
+            playTicker = null;
         }
     }
 
-
+    /**
+     * 当前画面渲染成的位图，每次调用都新建点阵和位图，只用于保存图片等一次性操作
+     */
     public Bitmap getBitmapCopy() {
-        int bmpWidth = (int) (cellSize * cols);
-        int bmpHeight = (int) (cellSize * rows);
-        Bitmap bmp = Bitmap.createBitmap(bmpWidth, bmpHeight, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bmp);
-        canvas.drawRect(0, 0, bmpWidth, bmpHeight, bgPaint);
-
-        int[][] srcData;
-        int srcCols;
+        ColumnSource srcData;
         if (isPreview && fullTextStates != null) {
             srcData = fullTextStates;
-            srcCols = totalCols;
         } else {
             srcData = dotStates;
-            srcCols = cols;
         }
 
-        if (previewRotateDegree != 0f) {
-            srcData = getRotatedStates(srcData, srcCols, previewRotateDegree);
-        }
-
-        for (int r = 0; r < rows; r++) {
-            for (int c = 0; c < cols; c++) {
-                int srcCol;
-                if (isPreview && previewOffsetX != 0) {
-                    srcCol = (c + previewOffsetX) % srcCols;
-                } else if (isPreview && srcCols > cols) {
-                    srcCol = Math.min(displayStartCol + c, srcCols - 1);
-                } else {
-                    srcCol = c;
-                }
-                float cx = cellSize * (c + 0.5f);
-                float cy = cellSize * (r + 0.5f);
-                if (srcData[r][srcCol] == 0) {
-                    canvas.drawCircle(cx, cy, dotRadius, blackPaint);
-                } else {
-                    canvas.drawCircle(cx, cy, dotRadius, whitePaint);
-                }
-            }
-        }
-        return bmp;
+        return dotRenderer.renderToBitmap(composeVisibleFrame(srcData, new DotMatrix(rows, cols, bitsPerDot)));
     }
 
     public boolean isFading() { return fadeController.isFading(); }
     public void startFadeEffect() { fadeController.startFadeEffect(); }
     public void stopFadeEffect() { fadeController.stopFadeEffect(); }
-    public int interpolateColor(int colorFrom, int colorTo) {
-        return fadeController.getInterpolatedColor(colorFrom,colorTo);
-    }
 
     public void setOnContentChangeListener(OnContentChangeListener listener) {
         this.contentChangeListener = listener;
     }
 
     public boolean isEmpty() {
-        for (int r = 0; r < rows; r++) {
-            for (int c = 0; c < cols; c++) {
-                if (dotStates[r][c] == 1) { // 有白点
-                    return false;
-                }
-            }
-        }
-        return true;
+        return dotStates.isEmpty();
     }
     public boolean isColumnFadeRunning() { return columnFadeController.isColumnFadeRunning(); }
-    public void startColumnFade() { columnFadeController.startColumnFade(fullTextStates, totalCols, rows); }
+    public void startColumnFade() { columnFadeController.startColumnFade(fullTextStates); }
     public void stopColumnFade() { columnFadeController.stopColumnFade(); }
-    public int[][] getPreviewWorkingStates() { return columnFadeController.getPreviewWorkingStates(); }
+    public ColumnSource getPreviewWorkingStates() { return columnFadeController.getPreviewWorkingStates(); }
     public boolean isOutCanvas(){ return isOutCanvas; }
 
 }
@@ -0,0 +1,318 @@
+package com.example.backlight.activitys;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.SurfaceTexture;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.AttributeSet;
+import android.view.Choreographer;
+import android.view.Surface;
+import android.view.TextureView;
+import android.view.View;
+
+import com.example.backlight.data.ColumnSource;
+import com.example.backlight.data.DotMatrix;
+import com.example.backlight.data.DotPalette;
+import com.example.backlight.utils.DotRenderer;
+import com.example.backlight.utils.RotationEngine;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 独立渲染线程的点阵预览
+ * 叠放在 PixelDrawView 之上，由 PixelDrawView 在主线程发布不可变的帧快照，
+ * 本视图在自己的线程上按 vsync 绘制；快照中带有滚动/旋转速度，
+ * 主线程卡住（弹窗、数据库查询）时渲染线程仍按时间外推，动画不停顿
+ */
+public class PixelTextureView extends TextureView implements TextureView.SurfaceTextureListener {
+    private static final long MAX_EXTRAPOLATION_NANOS = 1_000_000_000L; // 最多外推 1 秒
+
+    /**
+     * 帧快照：发布后不再修改，可在线程间直接传递
+     * 只截取渲染线程可能读到的一段列（一屏、外推期间滚过的列、旋转时两侧各半个行高），
+     * 长文字发布快照的开销与文字长度无关；截取的列缓冲在渲染线程换用新快照后交回主线程复用
+     */
+    static final class Snapshot {
+        final DotMatrix strip;         // 截取的列，strip 第 0 列对应数据源第 stripStart 列（循环）
+        final DotPalette palette;      // 彩色模式的调色板，null 表示灰度
+        final int stripStart;
+        final int srcCols;             // 数据源总列数
+        final int cols;                // 一屏显示的列数
+        final int startCol;            // 一屏的起始列
+        final float degree;            // 旋转角度
+        final ColorFilter fadeFilter;  // 淡入淡出时亮点的调暗滤镜，null 表示正常亮度
+        final float colsPerSecond;     // 跑马灯速度，用于外推
+        final float degreesPerSecond;  // 旋转速度，用于外推
+        final long timeNanos;          // 发布时间（System.nanoTime）
+
+        Snapshot(DotMatrix strip, int stripStart, int srcCols, DotPalette palette, int cols, int startCol,
+                 float degree, ColorFilter fadeFilter, float colsPerSecond, float degreesPerSecond) {
+            this.strip = strip;
+            this.stripStart = stripStart;
+            this.srcCols = srcCols;
+            this.palette = palette;
+            this.cols = cols;
+            this.startCol = startCol;
+            this.degree = degree;
+            this.fadeFilter = fadeFilter;
+            this.colsPerSecond = colsPerSecond;
+            this.degreesPerSecond = degreesPerSecond;
+            this.timeNanos = System.nanoTime();
+        }
+
+        boolean isMoving() {
+            return colsPerSecond != 0f || degreesPerSecond != 0f;
+        }
+
+        // 静止画面的内容和参数是否都与本快照相同；动画进行中总按最新时间重新发布
+        boolean sameStill(DotMatrix strip, int stripStart, int srcCols, DotPalette palette, int cols, int startCol,
+                          float degree, ColorFilter fadeFilter, float colsPerSecond, float degreesPerSecond) {
+            return !isMoving() && colsPerSecond == 0f && degreesPerSecond == 0f
+                    && stripStart == this.stripStart && srcCols == this.srcCols && cols == this.cols
+                    && startCol == this.startCol && degree == this.degree && fadeFilter == this.fadeFilter
+                    && (palette == this.palette || palette != null && palette.equals(this.palette))
+                    && strip.contentEquals(this.strip);
+        }
+
+        // 数据源第 col 列在 strip 中的列号，外推范围内总落在截取的列之内
+        int stripCol(int col) {
+            return Math.floorMod(col - stripStart, srcCols);
+        }
+    }
+
+    private HandlerThread renderThread;
+    private Handler renderHandler;
+    private Renderer renderer;               // 当前 Surface 的绘制器，其方法只在它自己的渲染线程中调用
+    private volatile Snapshot latest;        // 最新发布的快照
+    private DotMatrix spareStrip;            // 主线程截取下一份快照用的列缓冲
+    // 渲染线程换用新快照后交回的旧列缓冲，主线程取来复用
+    private final AtomicReference<DotMatrix> recycledStrip = new AtomicReference<>();
+    private View source;                     // 发布快照的视图，Surface 就绪时通知它重新发布
+
+    public PixelTextureView(Context context) { super(context); init(); }
+    public PixelTextureView(Context context, AttributeSet attrs) { super(context, attrs); init(); }
+
+    private void init() {
+        setSurfaceTextureListener(this);
+    }
+
+    void setSource(View source) {
+        this.source = source;
+    }
+
+    /** Surface 是否就绪，未就绪时由 PixelDrawView 自己绘制 **/
+    public boolean isRendering() {
+        return renderHandler != null;
+    }
+
+    /**
+     * 截取数据源当前要显示的一段列并发布为帧快照（主线程调用）；
+     * 画面静止且与上一次发布的完全相同时不发布，列缓冲留待下次使用
+     * @param source 数据源，截取在本方法内完成，之后数据源可以继续修改
+     */
+    public void publish(ColumnSource source, DotPalette palette, int cols, int startCol, float degree,
+                        ColorFilter fadeFilter, float colsPerSecond, float degreesPerSecond) {
+        int rows = source.getRows();
+        int srcCols = source.getCols();
+        boolean rotating = degree != 0f || degreesPerSecond != 0f;
+        int margin = rotating ? rows / 2 + 1 : 0;
+        int lookAhead = (int) Math.ceil(Math.abs(colsPerSecond) * MAX_EXTRAPOLATION_NANOS / 1e9) + 1;
+        int stripCols = cols + lookAhead + 2 * margin;
+        int stripStart;
+        if (stripCols >= srcCols) {
+            // 数据源不长，直接整段复制
+            stripCols = srcCols;
+            stripStart = 0;
+        } else {
+            stripStart = Math.floorMod(startCol - margin, srcCols);
+        }
+        DotMatrix strip = obtainStrip(rows, stripCols, source.getBitsPerDot());
+        source.window(strip, stripStart);
+
+        Snapshot last = latest;
+        if (last != null && last.sameStill(strip, stripStart, srcCols, palette, cols, startCol, degree,
+                fadeFilter, colsPerSecond, degreesPerSecond)) {
+            spareStrip = strip;
+            return;
+        }
+        publish(new Snapshot(strip, stripStart, srcCols, palette, cols, startCol, degree, fadeFilter,
+                colsPerSecond, degreesPerSecond));
+    }
+
+    // 优先复用上次未发布的或渲染线程交回的列缓冲，尺寸不符时才重新分配
+    private DotMatrix obtainStrip(int rows, int cols, int bitsPerDot) {
+        DotMatrix strip = spareStrip;
+        spareStrip = null;
+        if (!fits(strip, rows, cols, bitsPerDot)) strip = recycledStrip.getAndSet(null);
+        if (!fits(strip, rows, cols, bitsPerDot)) strip = new DotMatrix(rows, cols, bitsPerDot);
+        return strip;
+    }
+
+    private static boolean fits(DotMatrix m, int rows, int cols, int bitsPerDot) {
+        return m != null && m.getRows() == rows && m.getCols() == cols && m.getBitsPerDot() == bitsPerDot;
+    }
+
+    private void publish(Snapshot snapshot) {
+        latest = snapshot;
+        Handler handler = renderHandler;
+        if (handler != null) {
+            handler.removeCallbacks(renderer.requestFrameTask);
+            handler.post(renderer.requestFrameTask);
+        }
+    }
+
+    @Override
+    public void onSurfaceTextureAvailable(SurfaceTexture surfaceTexture, int width, int height) {
+        renderThread = new HandlerThread("dot-render", Process.THREAD_PRIORITY_DISPLAY);
+        renderThread.start();
+        Handler handler = new Handler(renderThread.getLooper());
+        Renderer r = new Renderer(new Surface(surfaceTexture));
+        handler.post(() -> r.resize(width, height));
+        renderer = r;
+        renderHandler = handler;
+        if (source != null) source.invalidate();
+    }
+
+    @Override
+    public void onSurfaceTextureSizeChanged(SurfaceTexture surfaceTexture, int width, int height) {
+        if (renderHandler != null) {
+            Renderer r = renderer;
+            renderHandler.post(() -> r.resize(width, height));
+        }
+    }
+
+    @Override
+    public boolean onSurfaceTextureDestroyed(SurfaceTexture surfaceTexture) {
+        Handler handler = renderHandler;
+        if (handler == null) return true;
+        Renderer r = renderer;
+        HandlerThread thread = renderThread;
+        renderHandler = null;
+        renderer = null;
+        renderThread = null;
+        // 不在主线程等待渲染线程（它可能正卡在 lockHardwareCanvas 里）：
+        // 由渲染线程先释放 Surface，再释放 SurfaceTexture 并退出，因此这里返回 false
+        handler.post(() -> {
+            r.release();
+            surfaceTexture.release();
+            thread.quitSafely();
+        });
+        if (source != null) source.invalidate();
+        return false;
+    }
+
+    @Override
+    public void onSurfaceTextureUpdated(SurfaceTexture surfaceTexture) {
+    }
+
+    /**
+     * 渲染线程上的绘制器，有快照变化或动画进行时按 vsync 绘制
+     */
+    private final class Renderer implements Choreographer.FrameCallback {
+        final Runnable requestFrameTask = this::requestFrame;
+        private final Surface surface;
+        private final DotRenderer dotRenderer = new DotRenderer();
+        private final RotationEngine rotationEngine = new RotationEngine();
+        private final Paint fadePaint = new Paint();
+        private Choreographer choreographer;
+        private DotMatrix frame;
+        private int width;
+        private int height;
+        private boolean frameRequested = false;
+        private boolean released = false;
+
+        // 上一次绘制的内容，未变化时跳过
+        private Snapshot drawnSnapshot;
+        private int drawnStartCol;
+        private float drawnDegree;
+
+        Renderer(Surface surface) {
+            this.surface = surface;
+        }
+
+        void resize(int width, int height) {
+            this.width = width;
+            this.height = height;
+            drawnSnapshot = null;
+            requestFrame();
+        }
+
+        void requestFrame() {
+            if (released || frameRequested) return;
+            if (choreographer == null) {
+                choreographer = Choreographer.getInstance();
+            }
+            frameRequested = true;
+            choreographer.postFrameCallback(this);
+        }
+
+        void release() {
+            released = true;
+            if (choreographer != null) choreographer.removeFrameCallback(this);
+            surface.release();
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            frameRequested = false;
+            Snapshot s = latest;
+            if (released || s == null || width <= 0 || height <= 0) return;
+
+            // 按快照发布后流逝的时间外推滚动列数和旋转角度
+            long elapsed = Math.max(0, Math.min(frameTimeNanos - s.timeNanos, MAX_EXTRAPOLATION_NANOS));
+            int startCol = s.startCol + (int) (elapsed * s.colsPerSecond / 1e9f);
+            int rotateSteps = (int) (elapsed * s.degreesPerSecond / 1e9f / RotationEngine.STEP_DEGREE);
+            float degree = s.degree + rotateSteps * RotationEngine.STEP_DEGREE;
+
+            if (s != drawnSnapshot || startCol != drawnStartCol || degree != drawnDegree) {
+                // 换用新快照后旧快照不会再被读取，列缓冲交回主线程
+                if (drawnSnapshot != null && s != drawnSnapshot) recycledStrip.set(drawnSnapshot.strip);
+                draw(s, startCol, degree);
+                drawnSnapshot = s;
+                drawnStartCol = startCol;
+                drawnDegree = degree;
+            }
+            if (s.isMoving()) requestFrame();
+        }
+
+        private void draw(Snapshot s, int startCol, float degree) {
+            int rows = s.strip.getRows();
+            int bitsPerDot = s.strip.getBitsPerDot();
+            if (frame == null || frame.getRows() != rows || frame.getCols() != s.cols
+                    || frame.getBitsPerDot() != bitsPerDot) {
+                frame = new DotMatrix(rows, s.cols, bitsPerDot);
+            }
+            if (s.palette != null) {
+                dotRenderer.setPalette(s.palette);
+            } else {
+                dotRenderer.setBitsPerDot(bitsPerDot);
+            }
+            dotRenderer.setGeometry(rows, s.cols, Math.min(width / (s.cols * 1f), height / (rows * 1f)));
+            int stripCol = s.stripCol(startCol);
+            if (degree != 0f) {
+                rotationEngine.rotate(s.strip, stripCol, degree, frame);
+            } else {
+                s.strip.window(frame, stripCol);
+            }
+
+            Canvas canvas = surface.lockHardwareCanvas();
+            try {
+                canvas.drawColor(Color.WHITE);
+                if (s.fadeFilter == null) {
+                    dotRenderer.drawFrame(canvas, frame);
+                } else {
+                    fadePaint.setColorFilter(s.fadeFilter);
+                    dotRenderer.drawBackground(canvas);
+                    dotRenderer.drawLitDots(canvas, frame, fadePaint);
+                }
+            } finally {
+                surface.unlockCanvasAndPost(canvas);
+            }
+        }
+    }
+}
@@ -1,22 +1,38 @@
 package com.example.backlight.controller;
 
-import android.animation.ValueAnimator;
 import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.LightingColorFilter;
+import android.graphics.Paint;
 
 import com.example.backlight.activitys.PixelDrawView;
 
 /**
  * 淡入淡出动画控制器
- * 用于在 PixelDrawView 中切换白点到黑点的渐变效果
+ * 用于在 PixelDrawView 中切换亮点到黑点的渐变效果
  */
 public class FadeController {
+    private static final int RAMP_SIZE = 64;  // 黑→白颜色表的级数
+    private static final long CYCLE_NANOS = 2_000_000_000L; // 一个循环 2 秒
+
     private PixelDrawView view;   // 主绘图视图
-    private ValueAnimator fadeAnimator;  // 控制淡入淡出的动画器
+    private FrameClock.Ticker fadeTicker; // 挂在帧时钟上的淡入淡出任务
+    private long elapsedNanos;           // 当前循环已进行的时间
     private float fadeFactor = 1f;       // 淡入淡出插值因子 (1=白色,0=黑色)
     private boolean isFading = false;    // 当前是否在淡入淡出
 
+    // 预先算好的黑→白各级调暗滤镜（各通道乘以该级灰度），动画每帧只切换下标，不再分配对象
+    private final ColorFilter[] filterRamp = new ColorFilter[RAMP_SIZE];
+    private final Paint fadePaint = new Paint();  // 绘制亮点精灵时复用的画笔
+    private int rampIndex = RAMP_SIZE - 1;
+
     public FadeController(PixelDrawView view) {
         this.view = view;
+        for (int i = 0; i < RAMP_SIZE; i++) {
+            int gray = (int) (255 * (i / (float) (RAMP_SIZE - 1)));
+            filterRamp[i] = new LightingColorFilter(Color.rgb(gray, gray, gray), 0);
+        }
+        fadePaint.setColorFilter(filterRamp[rampIndex]);
     }
 
     /**
@@ -32,45 +48,52 @@ public class FadeController {
     public void startFadeEffect() {
         if (isFading) return; // 已在动画中，防止重复启动
         isFading = true;
-        fadeAnimator = ValueAnimator.ofFloat(1f, 0f, 1f); // 白→黑→白
-        fadeAnimator.setDuration(2000); // 一个循环 2 秒
-        fadeAnimator.setRepeatCount(ValueAnimator.INFINITE);
-        fadeAnimator.addUpdateListener(animation -> {
-            fadeFactor = (float) animation.getAnimatedValue();
-            view.invalidate(); // 每一帧更新视图
-        });
-        fadeAnimator.start();
+        elapsedNanos = 0;
+        fadeTicker = new FrameClock.Ticker(view, 0) {
+            @Override
+            protected void onFrame(long deltaNanos) {
+                elapsedNanos = (elapsedNanos + deltaNanos) % CYCLE_NANOS;
+                // 先加速后减速，再换算成 白→黑→白 的 1→0→1
+                float fraction = (float) ((Math.cos((elapsedNanos / (double) CYCLE_NANOS + 1) * Math.PI) / 2) + 0.5);
+                fadeFactor = fraction < 0.5f ? 1f - fraction * 2f : fraction * 2f - 1f;
+                int index = Math.round(fadeFactor * (RAMP_SIZE - 1));
+                if (index != rampIndex) {
+                    // 颜色级别变化时才切换滤镜并刷新视图
+                    rampIndex = index;
+                    fadePaint.setColorFilter(filterRamp[index]);
+                    view.invalidate();
+                }
+            }
+        };
+        fadeTicker.start();
     }
 
     /**
      * 停止淡入淡出动画
      */
     public void stopFadeEffect() {
-        if (fadeAnimator != null) {
-            fadeAnimator.cancel();
-            fadeAnimator = null;
+        if (fadeTicker != null) {
+            fadeTicker.stop();
+            fadeTicker = null;
         }
         fadeFactor = 1f;  // 恢复为白色
+        rampIndex = RAMP_SIZE - 1;
+        fadePaint.setColorFilter(filterRamp[rampIndex]);
         isFading = false;
         view.invalidate();
     }
 
     /**
-     * 获取当前插值后的颜色（从 colorFrom 到 colorTo 渐变）
+     * 获取当前亮点应使用的画笔（已设置好当前级别的调暗滤镜）
      */
-    public int getInterpolatedColor(int colorFrom, int colorTo) {
-        int r1 = Color.red(colorFrom);
-        int g1 = Color.green(colorFrom);
-        int b1 = Color.blue(colorFrom);
-
-        int r2 = Color.red(colorTo);
-        int g2 = Color.green(colorTo);
-        int b2 = Color.blue(colorTo);
-
-        int r = (int) (r1 + (r2 - r1) * fadeFactor);
-        int g = (int) (g1 + (g2 - g1) * fadeFactor);
-        int b = (int) (b1 + (b2 - b1) * fadeFactor);
+    public Paint getFadePaint() {
+        return fadePaint;
+    }
 
-        return Color.rgb(r, g, b);
+    /**
+     * 获取当前级别的调暗滤镜（不可变对象，可交给渲染线程使用），亮点保留各自颜色按比例变暗
+     */
+    public ColorFilter getFadeFilter() {
+        return filterRamp[rampIndex];
     }
 }
@@ -0,0 +1,171 @@
+package com.example.backlight.controller;
+
+import android.view.Choreographer;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 全局帧时钟
+ * 所有动画（跑马灯、旋转、列渐变、淡入淡出、帧回放）共用一个 Choreographer 回调，
+ * 每个 vsync 按实际流逝的时间推进，不再各自链式 postDelayed 累积误差。
+ * 只能在主线程使用。
+ */
+public class FrameClock implements Choreographer.FrameCallback {
+    private static final long MAX_FRAME_DELTA_NANOS = 250_000_000L; // 单帧最多推进 250ms，避免卡顿后一次跳太多
+
+    private static FrameClock instance;
+
+    private final Choreographer choreographer;
+    private final List<Ticker> tickers = new ArrayList<>();
+    private Ticker[] dispatchBuffer = new Ticker[4];  // 分发时的快照，允许回调中增删 Ticker
+    private boolean frameScheduled = false;
+    private long lastFrameNanos = -1;
+
+    private FrameClock() {
+        choreographer = Choreographer.getInstance();
+    }
+
+    public static FrameClock getInstance() {
+        if (instance == null) {
+            instance = new FrameClock();
+        }
+        return instance;
+    }
+
+    private void add(Ticker ticker) {
+        if (!tickers.contains(ticker)) {
+            tickers.add(ticker);
+        }
+        scheduleIfNeeded();
+    }
+
+    private void remove(Ticker ticker) {
+        tickers.remove(ticker);
+    }
+
+    private void scheduleIfNeeded() {
+        if (frameScheduled) return;
+        for (int i = 0; i < tickers.size(); i++) {
+            if (tickers.get(i).isActive()) {
+                frameScheduled = true;
+                choreographer.postFrameCallback(this);
+                return;
+            }
+        }
+        // 没有活动的 Ticker 时时钟停止，下次启动重新计时
+        lastFrameNanos = -1;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        long delta = lastFrameNanos < 0 ? 0 : Math.min(frameTimeNanos - lastFrameNanos, MAX_FRAME_DELTA_NANOS);
+        lastFrameNanos = frameTimeNanos;
+
+        int count = tickers.size();
+        if (dispatchBuffer.length < count) {
+            dispatchBuffer = new Ticker[count * 2];
+        }
+        tickers.toArray(dispatchBuffer);
+        for (int i = 0; i < count; i++) {
+            Ticker ticker = dispatchBuffer[i];
+            dispatchBuffer[i] = null;
+            if (ticker.isActive() && tickers.contains(ticker)) {
+                ticker.onFrame(delta);
+            }
+        }
+        scheduleIfNeeded();
+    }
+
+    /**
+     * 挂在帧时钟上的动画任务，绑定一个宿主 View：
+     * 宿主离开窗口时自动暂停并从帧时钟上摘下（全局时钟不再引用宿主，已销毁的界面不会因此泄漏），
+     * 重新附着后继续（不补偿暂停期间的时间）
+     */
+    public static class Ticker implements View.OnAttachStateChangeListener {
+        private final View host;
+        private long intervalNanos;        // 每步的时间间隔
+        private long accumulatedNanos;     // 尚未消耗的时间
+        private boolean running = false;   // 是否已启动
+
+        /**
+         * @param host 宿主视图
+         * @param intervalMs 每步间隔（毫秒），只重写 onFrame 的连续动画可传 0
+         */
+        public Ticker(View host, int intervalMs) {
+            this.host = host;
+            setInterval(intervalMs);
+        }
+
+        /** 修改步进间隔，已累计的时间保留，速度切换时不会跳帧 **/
+        public void setInterval(int intervalMs) {
+            intervalNanos = Math.max(1, intervalMs) * 1_000_000L;
+        }
+
+        /** 启动：经过一个间隔后执行第一步 **/
+        public void start() {
+            start(0);
+        }
+
+        /** 启动：下一帧立即执行第一步 **/
+        public void startNow() {
+            start(intervalNanos);
+        }
+
+        private void start(long initialNanos) {
+            if (running) return;
+            running = true;
+            accumulatedNanos = initialNanos;
+            host.addOnAttachStateChangeListener(this);
+            if (host.isAttachedToWindow()) {
+                FrameClock.getInstance().add(this);
+            }
+        }
+
+        public void stop() {
+            if (!running) return;
+            running = false;
+            host.removeOnAttachStateChangeListener(this);
+            FrameClock.getInstance().remove(this);
+        }
+
+        public boolean isRunning() {
+            return running;
+        }
+
+        boolean isActive() {
+            return running;
+        }
+
+        /**
+         * 每个 vsync 调用一次
+         * @param deltaNanos 距上一帧的时间
+         */
+        protected void onFrame(long deltaNanos) {
+            accumulatedNanos += deltaNanos;
+            if (accumulatedNanos < intervalNanos) return;
+            int steps = (int) (accumulatedNanos / intervalNanos);
+            accumulatedNanos -= steps * intervalNanos;
+            onTick(steps);
+        }
+
+        /**
+         * 按间隔推进；间隔小于帧时长时一帧内会合并为多步
+         * @param steps 本帧应推进的步数
+         */
+        protected void onTick(int steps) {
+        }
+
+        @Override
+        public void onViewAttachedToWindow(View v) {
+            if (running) FrameClock.getInstance().add(this);
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(View v) {
+            FrameClock.getInstance().remove(this);
+        }
+    }
+}
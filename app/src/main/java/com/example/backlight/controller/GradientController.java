@@ -1,10 +1,8 @@
 package com.example.backlight.controller;
 
-import android.os.Handler;
-
 import com.example.backlight.activitys.PixelDrawView;
-
-import java.util.Arrays;
+import com.example.backlight.data.ColumnSource;
+import com.example.backlight.data.DotMatrix;
 
 /**
  * 列渐变动画控制器
@@ -15,11 +13,10 @@ public class GradientController {
     private boolean isColumnFadeRunning = false; // 当前是否正在列渐变
     private boolean isShowingPhase = true;       // true=显现，false=消失
     private int currentColumn = 0;               // 当前操作的列索引
-    private Handler fadeHandler = new Handler(); // 控制动画运行的 Handler
-    private Runnable fadeRunnable;               // 动画任务
+    private FrameClock.Ticker fadeTicker;        // 挂在帧时钟上的动画任务
     private int fadeInterval = 100;              // 每列间隔毫秒
-    private int[][] previewOriginalStates;       // 保存原始文字点阵
-    private int[][] previewWorkingStates;        // 工作数组（渐变过程显示的状态）
+    private ColumnSource previewOriginalStates;  // 保存原始文字点阵
+    private WorkingSource previewWorkingStates;  // 工作点阵（渐变过程显示的状态）
 
     public GradientController(PixelDrawView view) {
         this.view = view;
@@ -28,66 +25,59 @@ public class GradientController {
     /**
      * 启动列渐变动画
      * @param fullTextStates 原始完整文字点阵
-     * @param totalCols 总列数
-     * @param rows 总行数
      */
-    public void startColumnFade(int[][] fullTextStates, int totalCols, int rows) {
+    public void startColumnFade(ColumnSource fullTextStates) {
         if (fullTextStates == null) return;
+        if (fadeTicker != null) fadeTicker.stop();
         isColumnFadeRunning = true;
         isShowingPhase = true;
         currentColumn = 0;
 
         // 保存原始文字
-        previewOriginalStates = new int[rows][totalCols];
-        for (int r = 0; r < rows; r++) {
-            System.arraycopy(fullTextStates[r], 0, previewOriginalStates[r], 0, totalCols);
-        }
+        previewOriginalStates = fullTextStates.copy();
 
-        // 创建工作数组初始全黑
-        previewWorkingStates = new int[rows][totalCols];
-        for (int r = 0; r < rows; r++) {
-            Arrays.fill(previewWorkingStates[r], 0);
-        }
+        // 工作点阵初始全黑
+        previewWorkingStates = new WorkingSource(previewOriginalStates, true, 0);
 
         view.invalidate();
 
-        fadeRunnable = new Runnable() {
+        fadeTicker = new FrameClock.Ticker(view, fadeInterval) {
             @Override
-            public void run() {
-                if (!isColumnFadeRunning) return;
-
-                if (isShowingPhase) {
-                    // 显现阶段：每次增加一列
-                    if (currentColumn < totalCols) {
-                        for (int r = 0; r < rows; r++) {
-                            previewWorkingStates[r][currentColumn] = previewOriginalStates[r][currentColumn];
-                        }
-                        currentColumn++;
-                    } else {
-                        // 切换到消失阶段
-                        isShowingPhase = false;
-                        currentColumn = 0;
-                    }
-                } else {
-                    // 消失阶段：每次变黑一列
-                    if (currentColumn < totalCols) {
-                        for (int r = 0; r < rows; r++) {
-                            previewWorkingStates[r][currentColumn] = 0;
-                        }
-                        currentColumn++;
-                    } else {
-                        // 切换回显现阶段
-                        isShowingPhase = true;
-                        currentColumn = 0;
-                    }
+            protected void onTick(int steps) {
+                for (int i = 0; i < steps && isColumnFadeRunning; i++) {
+                    advanceColumn();
                 }
-
-                view.invalidate();
-                fadeHandler.postDelayed(this, fadeInterval);
             }
         };
+        fadeTicker.start();
+    }
 
-        fadeHandler.postDelayed(fadeRunnable, fadeInterval);
+    // 推进一步：显现或消失一列
+    private void advanceColumn() {
+        int totalCols = previewOriginalStates.getCols();
+        if (isShowingPhase) {
+            // 显现阶段：每次增加一列
+            if (currentColumn < totalCols) {
+                currentColumn++;
+                previewWorkingStates = new WorkingSource(previewOriginalStates, true, currentColumn);
+                view.invalidateSourceColumn(currentColumn - 1);
+            } else {
+                // 切换到消失阶段
+                isShowingPhase = false;
+                currentColumn = 0;
+            }
+        } else {
+            // 消失阶段：每次变黑一列
+            if (currentColumn < totalCols) {
+                currentColumn++;
+                previewWorkingStates = new WorkingSource(previewOriginalStates, false, currentColumn);
+                view.invalidateSourceColumn(currentColumn - 1);
+            } else {
+                // 切换回显现阶段
+                isShowingPhase = true;
+                currentColumn = 0;
+            }
+        }
     }
 
     /**
@@ -95,7 +85,10 @@ public class GradientController {
      */
     public void stopColumnFade() {
         isColumnFadeRunning = false;
-        fadeHandler.removeCallbacks(fadeRunnable);
+        if (fadeTicker != null) {
+            fadeTicker.stop();
+            fadeTicker = null;
+        }
         previewWorkingStates = null;
         view.invalidate();
     }
@@ -108,9 +101,66 @@ public class GradientController {
     }
 
     /**
-     * 获取当前动画显示的工作数组
+     * 获取当前动画显示的工作点阵
      */
-    public int[][] getPreviewWorkingStates() {
+    public ColumnSource getPreviewWorkingStates() {
         return previewWorkingStates;
     }
+
+    /**
+     * 渐变过程中某一时刻的显示状态：只记录进度，读取时由原始文字按列遮挡，
+     * 不复制整段点阵，长文字也不占额外内存
+     */
+    private static final class WorkingSource implements ColumnSource {
+        private final ColumnSource original;
+        private final int visibleFrom;   // 可见列范围 [visibleFrom, visibleTo)
+        private final int visibleTo;
+
+        /**
+         * @param showing true=显现阶段（前 column 列可见），false=消失阶段（前 column 列已熄灭）
+         */
+        WorkingSource(ColumnSource original, boolean showing, int column) {
+            this.original = original;
+            this.visibleFrom = showing ? 0 : column;
+            this.visibleTo = showing ? column : original.getCols();
+        }
+
+        private WorkingSource(ColumnSource original, int visibleFrom, int visibleTo) {
+            this.original = original;
+            this.visibleFrom = visibleFrom;
+            this.visibleTo = visibleTo;
+        }
+
+        @Override
+        public int getRows() { return original.getRows(); }
+
+        @Override
+        public int getCols() { return original.getCols(); }
+
+        @Override
+        public int getBitsPerDot() { return original.getBitsPerDot(); }
+
+        @Override
+        public int get(int r, int c) {
+            return c >= visibleFrom && c < visibleTo ? original.get(r, c) : 0;
+        }
+
+        @Override
+        public void copyColumns(int srcCol, DotMatrix dst, int dstCol, int count) {
+            int from = Math.max(srcCol, visibleFrom);
+            int to = Math.min(srcCol + count, visibleTo);
+            if (from >= to) {
+                dst.clearColumns(dstCol, count);
+                return;
+            }
+            dst.clearColumns(dstCol, from - srcCol);
+            original.copyColumns(from, dst, dstCol + from - srcCol, to - from);
+            dst.clearColumns(dstCol + to - srcCol, srcCol + count - to);
+        }
+
+        @Override
+        public ColumnSource copy() {
+            return new WorkingSource(original.copy(), visibleFrom, visibleTo);
+        }
+    }
 }
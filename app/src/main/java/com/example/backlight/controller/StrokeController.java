@@ -0,0 +1,135 @@
+package com.example.backlight.controller;
+
+import android.view.MotionEvent;
+
+import com.example.backlight.activitys.PixelDrawView;
+import com.example.backlight.data.DotMatrix;
+
+/**
+ * 触摸笔画控制器
+ * 读取 MotionEvent 中批量的历史坐标，相邻采样点之间用 Bresenham 补线，
+ * 快速划动时笔画也是连续的；点阵数据立即写入，刷新和内容变化通知则合并到下一帧只做一次
+ */
+public class StrokeController {
+    private PixelDrawView view;
+    private int value = 1;            // 本次笔画写入的值（画笔的亮度级别或颜色下标，0=擦除）
+    private int lastRow = -1;         // 上一个采样点所在格子，-1 表示笔画刚开始
+    private int lastCol = -1;
+
+    // 本帧内变化的格子范围，flush 时一次性刷新
+    private boolean dirty = false;
+    private int dirtyTop, dirtyBottom, dirtyLeft, dirtyRight;
+    private boolean flushPosted = false;
+    private final Runnable flushTask = this::flush;
+
+    public StrokeController(PixelDrawView view) {
+        this.view = view;
+    }
+
+    /**
+     * 处理一个触摸事件
+     * @param event 触摸事件
+     * @param value 写入的值（画笔的亮度级别或颜色下标，0=擦除），在 ACTION_DOWN 时生效
+     */
+    public void onTouchEvent(MotionEvent event, int value) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                this.value = value;
+                lastRow = -1;
+                lastCol = -1;
+                addPoint(event.getX(), event.getY());
+                postFlush();
+                break;
+            case MotionEvent.ACTION_MOVE:
+                // 先按时间顺序处理本批中被合并的历史采样，再处理最新坐标
+                for (int h = 0, n = event.getHistorySize(); h < n; h++) {
+                    addPoint(event.getHistoricalX(h), event.getHistoricalY(h));
+                }
+                addPoint(event.getX(), event.getY());
+                postFlush();
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                // 抬手时立即提交，保证监听者拿到的是完整笔画
+                lastRow = -1;
+                lastCol = -1;
+                view.removeCallbacks(flushTask);
+                flush();
+                break;
+        }
+    }
+
+    // 加入一个采样点，和上一个点之间补齐直线
+    private void addPoint(float x, float y) {
+        int cell = view.cellIndexAt(x, y);
+        if (cell < 0) {
+            // 移出网格后笔画断开，重新进入时不与出界前的点连线
+            lastRow = -1;
+            lastCol = -1;
+            return;
+        }
+        int cols = view.getCols();
+        int r = cell / cols;
+        int c = cell % cols;
+        if (lastRow < 0) {
+            plot(r, c);
+        } else if (r != lastRow || c != lastCol) {
+            drawLine(lastRow, lastCol, r, c);
+        }
+        lastRow = r;
+        lastCol = c;
+    }
+
+    // Bresenham 直线，起点已在上一次画过
+    private void drawLine(int r0, int c0, int r1, int c1) {
+        int dc = Math.abs(c1 - c0);
+        int dr = -Math.abs(r1 - r0);
+        int sc = c0 < c1 ? 1 : -1;
+        int sr = r0 < r1 ? 1 : -1;
+        int err = dc + dr;
+        int r = r0;
+        int c = c0;
+        while (r != r1 || c != c1) {
+            int e2 = 2 * err;
+            if (e2 >= dr) {
+                err += dr;
+                c += sc;
+            }
+            if (e2 <= dc) {
+                err += dc;
+                r += sr;
+            }
+            plot(r, c);
+        }
+    }
+
+    private void plot(int r, int c) {
+        DotMatrix dots = view.getDotStates();
+        if (dots.get(r, c) == value) return;
+        dots.set(r, c, value);
+        if (!dirty) {
+            dirty = true;
+            dirtyTop = dirtyBottom = r;
+            dirtyLeft = dirtyRight = c;
+        } else {
+            dirtyTop = Math.min(dirtyTop, r);
+            dirtyBottom = Math.max(dirtyBottom, r);
+            dirtyLeft = Math.min(dirtyLeft, c);
+            dirtyRight = Math.max(dirtyRight, c);
+        }
+    }
+
+    // 同一帧内的多个事件只安排一次提交
+    private void postFlush() {
+        if (flushPosted || !dirty) return;
+        flushPosted = true;
+        view.postOnAnimation(flushTask);
+    }
+
+    private void flush() {
+        flushPosted = false;
+        if (!dirty) return;
+        dirty = false;
+        view.onStrokeApplied(dirtyTop, dirtyBottom, dirtyLeft, dirtyRight);
+    }
+}
@@ -5,12 +5,47 @@ import android.content.Context;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
-@Database(entities = {MarqueeEntity.class}, version = 1, exportSchema = false)
+@Database(entities = {MarqueeEntity.class}, version = 5, exportSchema = false)
 public abstract class AppDatabase extends RoomDatabase {
 
     private static volatile AppDatabase INSTANCE;
 
+    // v2：记录点阵尺寸，旧记录都是 15x20
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE marquee_table ADD COLUMN gridRows INTEGER NOT NULL DEFAULT 15");
+            db.execSQL("ALTER TABLE marquee_table ADD COLUMN gridCols INTEGER NOT NULL DEFAULT 20");
+        }
+    };
+
+    // v3：帧的每点位数，旧记录为 0（未记录，读取时按帧内容推断）
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE marquee_table ADD COLUMN bitsPerDot INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    // v4：彩色跑马灯的调色板，旧记录为灰度（null）
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE marquee_table ADD COLUMN palette TEXT");
+        }
+    };
+
+    // v5：只记录跑马灯的数据源，播放时重新生成各帧；旧记录为 null，仍按 framesJson 逐帧播放
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE marquee_table ADD COLUMN source TEXT");
+        }
+    };
+
     public abstract MarqueeDao marqueeDao();
 
     public static AppDatabase getInstance(Context context) {
@@ -22,6 +57,7 @@ public abstract class AppDatabase extends RoomDatabase {
                                     AppDatabase.class,
                                     "backlight_db"
                             )
+                            .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5)
                             .allowMainThreadQueries() // ⚠️ 演示方便，生产环境请改为异步线程
                             .build();
                 }
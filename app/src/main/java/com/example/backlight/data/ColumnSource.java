@@ -0,0 +1,49 @@
+package com.example.backlight.data;
+
+/**
+ * 按列读取的点阵数据源
+ * 完整文字可能长达数千字，显示、旋转和导出都只按需读取其中一段列，
+ * 不要求整段点阵常驻内存
+ */
+public interface ColumnSource {
+    int getRows();
+
+    /** 总列数，也是循环滚动的周期 **/
+    int getCols();
+
+    /** 每点位数：1/2/4 为灰度，决定亮度级数；8 为调色板下标 **/
+    int getBitsPerDot();
+
+    /** 获取某点的亮度级别（0=灭） **/
+    int get(int r, int c);
+
+    /**
+     * 把 [srcCol, srcCol + count) 的列复制到 dst 的 dstCol 处（不循环），dst 位数不同时按 DotMatrix.convertLevel 换算
+     */
+    void copyColumns(int srcCol, DotMatrix dst, int dstCol, int count);
+
+    /**
+     * 返回可交给其他线程独立读取的副本，内容不随本对象变化
+     */
+    ColumnSource copy();
+
+    /**
+     * 从第 srcCol 列开始截取 dst.getCols() 列写入 dst，超出右边界时从第 0 列循环取
+     * @param dst 目标点阵，行数必须一致
+     * @param srcCol 起始列
+     */
+    default void window(DotMatrix dst, int srcCol) {
+        if (dst.getRows() != getRows()) {
+            throw new IllegalArgumentException("row count mismatch: " + dst.getRows() + " != " + getRows());
+        }
+        int cols = getCols();
+        srcCol = Math.floorMod(srcCol, cols);
+        int dstCol = 0;
+        while (dstCol < dst.getCols()) {
+            int n = Math.min(dst.getCols() - dstCol, cols - srcCol);
+            copyColumns(srcCol, dst, dstCol, n);
+            dstCol += n;
+            srcCol = 0;
+        }
+    }
+}
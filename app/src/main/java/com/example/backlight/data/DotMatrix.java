@@ -0,0 +1,415 @@
+package com.example.backlight.data;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 位压缩点阵帧
+ * 每个点占 bitsPerDot（1/2/4/8）位，存放亮度级别 0 ~ getMaxLevel()，1 位时即普通的亮灭，
+ * 8 位时为彩色调色板下标（见 DotPalette）；
+ * 每行用 stride 个 long 存储（第 c 列占该行第 c*bitsPerDot 位起的 bitsPerDot 位），
+ * 列方向的截取、平移都按整字移位完成
+ */
+public class DotMatrix implements ColumnSource {
+    private final int rows;        // 行数
+    private final int cols;        // 列数
+    private final int shift;       // 每点位数的 log2：0/1/2/3 对应 1/2/4/8 位
+    private final int maxLevel;    // 最高亮度级别
+    private final int stride;      // 每行占用的 long 个数
+    private final long[] words;    // 行优先存放的位数据
+
+    public DotMatrix(int rows, int cols) {
+        this(rows, cols, 1);
+    }
+
+    /**
+     * @param bitsPerDot 每点位数：1（亮灭）、2（4 级亮度）、4（16 级亮度）或 8（调色板下标）
+     */
+    public DotMatrix(int rows, int cols, int bitsPerDot) {
+        if (rows <= 0 || cols <= 0) {
+            throw new IllegalArgumentException("rows/cols must be positive: " + rows + "x" + cols);
+        }
+        if (bitsPerDot != 1 && bitsPerDot != 2 && bitsPerDot != 4 && bitsPerDot != 8) {
+            throw new IllegalArgumentException("bitsPerDot must be 1, 2, 4 or 8: " + bitsPerDot);
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.shift = Integer.numberOfTrailingZeros(bitsPerDot);
+        this.maxLevel = (1 << bitsPerDot) - 1;
+        this.stride = ((cols << shift) + 63) >>> 6;
+        this.words = new long[rows * stride];
+    }
+
+    /**
+     * 亮度级数对应的每点位数
+     * @param levels 2、4 或 16
+     */
+    public static int bitsPerDotFor(int levels) {
+        switch (levels) {
+            case 2: return 1;
+            case 4: return 2;
+            case 16: return 4;
+            default: throw new IllegalArgumentException("levels must be 2, 4 or 16: " + levels);
+        }
+    }
+
+    /** 把 fromMax 级的亮度按比例换算为 toMax 级（四舍五入） **/
+    public static int scaleLevel(int v, int fromMax, int toMax) {
+        if (fromMax == toMax) return v;
+        return (v * toMax + fromMax / 2) / fromMax;
+    }
+
+    /**
+     * 不同位数之间换算点值：灰度之间按比例换算亮度，
+     * 任一方为 8 位（调色板下标）时下标没有大小意义，原样保留并按 toMax 截断
+     */
+    public static int convertLevel(int v, int fromMax, int toMax) {
+        if (fromMax == 0xFF || toMax == 0xFF) return Math.min(v, toMax);
+        return scaleLevel(v, fromMax, toMax);
+    }
+
+    @Override
+    public int getRows() { return rows; }
+    @Override
+    public int getCols() { return cols; }
+    @Override
+    public int getBitsPerDot() { return 1 << shift; }
+    public int getMaxLevel() { return maxLevel; }
+
+    /** 获取某点的亮度级别（0=灭） **/
+    @Override
+    public int get(int r, int c) {
+        int bit = c << shift;
+        return (int) (words[r * stride + (bit >>> 6)] >>> (bit & 63)) & maxLevel;
+    }
+
+    /** 设置某点的亮度级别，超过最高级别按最高级别处理（1 位时非 0 即点亮） **/
+    public void set(int r, int c, int v) {
+        int bit = c << shift;
+        int i = r * stride + (bit >>> 6);
+        long level = Math.max(0, Math.min(v, maxLevel));
+        long mask = (long) maxLevel << (bit & 63);
+        words[i] = (words[i] & ~mask) | (level << (bit & 63));
+    }
+
+    /**
+     * 查找第 r 行中从 fromCol 开始的下一个亮点
+     * @return 列号，没有则返回 -1
+     */
+    public int nextSetColumn(int r, int fromCol) {
+        if (fromCol >= cols) return -1;
+        int base = r * stride;
+        int fromBit = fromCol << shift;
+        int i = fromBit >>> 6;
+        long w = words[base + i] & (-1L << (fromBit & 63));
+        while (true) {
+            if (w != 0L) {
+                int c = ((i << 6) + Long.numberOfTrailingZeros(w)) >>> shift;
+                return c < cols ? c : -1;
+            }
+            if (++i == stride) return -1;
+            w = words[base + i];
+        }
+    }
+
+    /**
+     * 最左侧有亮点的列，逐行按字查找
+     * @return 列号，全部熄灭时返回 -1
+     */
+    public int firstSetColumn() {
+        int first = -1;
+        for (int r = 0; r < rows; r++) {
+            int c = nextSetColumn(r, 0);
+            if (c >= 0 && (first < 0 || c < first)) first = c;
+        }
+        return first;
+    }
+
+    /**
+     * 最右侧有亮点的列，逐行从最高位的字往回找
+     * @return 列号，全部熄灭时返回 -1
+     */
+    public int lastSetColumn() {
+        int lastBit = -1;
+        for (int r = 0; r < rows; r++) {
+            int base = r * stride;
+            for (int i = stride - 1; i >= 0 && (i << 6) + 63 > lastBit; i--) {
+                long w = words[base + i];
+                if (w != 0L) {
+                    lastBit = Math.max(lastBit, (i << 6) + 63 - Long.numberOfLeadingZeros(w));
+                    break;
+                }
+            }
+        }
+        return lastBit < 0 ? -1 : lastBit >>> shift;
+    }
+
+    /**
+     * 查找第 r 行中从 fromCol 开始与 other 取值不同的下一个点，按字异或比较
+     * @param other 同尺寸、同位数的点阵
+     * @return 列号，没有则返回 -1
+     */
+    public int nextDiffColumn(DotMatrix other, int r, int fromCol) {
+        if (fromCol >= cols) return -1;
+        int base = r * stride;
+        int fromBit = fromCol << shift;
+        int i = fromBit >>> 6;
+        long w = (words[base + i] ^ other.words[base + i]) & (-1L << (fromBit & 63));
+        while (true) {
+            if (w != 0L) {
+                int c = ((i << 6) + Long.numberOfTrailingZeros(w)) >>> shift;
+                return c < cols ? c : -1;
+            }
+            if (++i == stride) return -1;
+            w = words[base + i] ^ other.words[base + i];
+        }
+    }
+
+    /** 全部熄灭 **/
+    public void clear() {
+        java.util.Arrays.fill(words, 0L);
+    }
+
+    /** 从同尺寸的点阵复制全部数据，位数不同时按 convertLevel 逐点换算 **/
+    public void copyFrom(DotMatrix src) {
+        checkSameSize(src);
+        if (src.shift == shift) {
+            System.arraycopy(src.words, 0, words, 0, words.length);
+        } else {
+            src.copyColumns(0, this, 0, cols);
+        }
+    }
+
+    @Override
+    public DotMatrix copy() {
+        DotMatrix m = new DotMatrix(rows, cols, getBitsPerDot());
+        System.arraycopy(words, 0, m.words, 0, words.length);
+        return m;
+    }
+
+    /** 两个点阵内容是否完全一致 **/
+    public boolean contentEquals(DotMatrix other) {
+        return other != null && other.rows == rows && other.cols == cols && other.shift == shift
+                && java.util.Arrays.equals(words, other.words);
+    }
+
+    /**
+     * 把本点阵 [srcCol, srcCol + count) 的列复制到 dst 的 dstCol 处（不循环），
+     * 位数相同时整字移位，不同时逐点按 convertLevel 换算（灰度按比例，调色板下标原样截断）
+     */
+    @Override
+    public void copyColumns(int srcCol, DotMatrix dst, int dstCol, int count) {
+        if (count <= 0) return;
+        if (dst.rows != rows) {
+            throw new IllegalArgumentException("row count mismatch: " + dst.rows + " != " + rows);
+        }
+        if (srcCol < 0 || srcCol + count > cols || dstCol < 0 || dstCol + count > dst.cols) {
+            throw new IndexOutOfBoundsException("columns out of range: " + srcCol + "->" + dstCol + " x" + count);
+        }
+        if (dst.shift != shift) {
+            for (int r = 0; r < rows; r++) {
+                for (int i = 0; i < count; i++) {
+                    dst.set(r, dstCol + i, convertLevel(get(r, srcCol + i), maxLevel, dst.maxLevel));
+                }
+            }
+            return;
+        }
+        for (int r = 0; r < rows; r++) {
+            copyBits(words, ((r * stride) << 6) + (srcCol << shift),
+                    dst.words, ((r * dst.stride) << 6) + (dstCol << shift), count << shift);
+        }
+    }
+
+    /**
+     * 把 src 的 [srcRow, srcRow + count) 行整行复制到本点阵第 dstRow 行起，两者列数和位数必须一致
+     */
+    public void copyRows(DotMatrix src, int srcRow, int dstRow, int count) {
+        if (count <= 0) return;
+        if (src.cols != cols || src.shift != shift) {
+            throw new IllegalArgumentException("row layout mismatch: " + src.cols + "x" + src.getBitsPerDot()
+                    + " != " + cols + "x" + getBitsPerDot());
+        }
+        if (srcRow < 0 || srcRow + count > src.rows || dstRow < 0 || dstRow + count > rows) {
+            throw new IndexOutOfBoundsException("rows out of range: " + srcRow + "->" + dstRow + " x" + count);
+        }
+        System.arraycopy(src.words, srcRow * stride, words, dstRow * stride, count * stride);
+    }
+
+    /** 把 src 的第 srcCol 列复制到本点阵第 dstCol 列 **/
+    public void copyColumn(DotMatrix src, int srcCol, int dstCol) {
+        src.copyColumns(srcCol, this, dstCol, 1);
+    }
+
+    /** 熄灭某一列 **/
+    public void clearColumn(int c) {
+        int bit = c << shift;
+        long mask = ~((long) maxLevel << (bit & 63));
+        for (int i = bit >>> 6; i < words.length; i += stride) {
+            words[i] &= mask;
+        }
+    }
+
+    /** 熄灭 [fromCol, fromCol + count) 的列 **/
+    public void clearColumns(int fromCol, int count) {
+        if (count <= 0) return;
+        for (int r = 0; r < rows; r++) {
+            clearBits(words, ((r * stride) << 6) + (fromCol << shift), count << shift);
+        }
+    }
+
+    /**
+     * 所有行整体左移 n 列，右侧空出的列熄灭
+     */
+    public void shiftLeft(int n) {
+        if (n <= 0) return;
+        if (n >= cols) {
+            clear();
+            return;
+        }
+        int rowBits = cols << shift;
+        int nBits = n << shift;
+        for (int r = 0; r < rows; r++) {
+            int base = (r * stride) << 6;
+            copyBits(words, base + nBits, words, base, rowBits - nBits);
+            clearBits(words, base + rowBits - nBits, nBits);
+        }
+    }
+
+    /** 点亮（亮度不为 0）的点数 **/
+    public int cardinality() {
+        int count = 0;
+        for (long w : words) {
+            // 把每个点的各位折叠到该点的最低位再计数
+            if (shift >= 1) w = (w | (w >>> 1)) & 0x5555555555555555L;
+            if (shift >= 2) w = (w | (w >>> 2)) & 0x1111111111111111L;
+            if (shift >= 3) w = (w | (w >>> 4)) & 0x0101010101010101L;
+            count += Long.bitCount(w);
+        }
+        return count;
+    }
+
+    /** 是否全部熄灭 **/
+    public boolean isEmpty() {
+        for (long w : words) {
+            if (w != 0L) return false;
+        }
+        return true;
+    }
+
+    /** 转为 [[0,1,...],...] 形式的 JSON，与数据库中已保存的帧格式一致，多级亮度时为级别值 **/
+    public JSONArray toJsonArray() {
+        JSONArray outer = new JSONArray();
+        for (int r = 0; r < rows; r++) {
+            JSONArray inner = new JSONArray();
+            for (int c = 0; c < cols; c++) {
+                inner.put(get(r, c));
+            }
+            outer.put(inner);
+        }
+        return outer;
+    }
+
+    /** 解析单帧，按其中的最大值确定每点位数 **/
+    public static DotMatrix fromJsonArray(JSONArray outer) throws JSONException {
+        return fromJsonArray(outer, bitsPerDotForMax(maxValue(outer)));
+    }
+
+    public static DotMatrix fromJsonArray(JSONArray outer, int bitsPerDot) throws JSONException {
+        int rows = outer.length();
+        int cols = outer.getJSONArray(0).length();
+        DotMatrix m = new DotMatrix(rows, cols, bitsPerDot);
+        for (int r = 0; r < rows; r++) {
+            JSONArray inner = outer.getJSONArray(r);
+            for (int c = 0; c < cols && c < inner.length(); c++) {
+                m.set(r, c, inner.getInt(c));
+            }
+        }
+        return m;
+    }
+
+    /**
+     * 解析一组帧，所有帧使用同一位数（按全部帧中的最大值确定），
+     * 避免某帧恰好没有高亮度的点而被当成较少的级数
+     */
+    public static List<DotMatrix> framesFromJson(JSONArray frames) throws JSONException {
+        int max = 0;
+        for (int f = 0; f < frames.length(); f++) {
+            max = Math.max(max, maxValue(frames.getJSONArray(f)));
+        }
+        return framesFromJson(frames, bitsPerDotForMax(max));
+    }
+
+    /** 按指定位数解析一组帧（已记录位数的跑马灯，或彩色跑马灯的 8 位下标） **/
+    public static List<DotMatrix> framesFromJson(JSONArray frames, int bitsPerDot) throws JSONException {
+        List<DotMatrix> result = new ArrayList<>(frames.length());
+        for (int f = 0; f < frames.length(); f++) {
+            result.add(fromJsonArray(frames.getJSONArray(f), bitsPerDot));
+        }
+        return result;
+    }
+
+    private static int maxValue(JSONArray outer) throws JSONException {
+        int max = 0;
+        for (int r = 0; r < outer.length(); r++) {
+            JSONArray inner = outer.getJSONArray(r);
+            for (int c = 0; c < inner.length(); c++) {
+                max = Math.max(max, inner.getInt(c));
+            }
+        }
+        return max;
+    }
+
+    private static int bitsPerDotForMax(int max) {
+        if (max <= 1) return 1;
+        if (max <= 3) return 2;
+        return max <= 15 ? 4 : 8;
+    }
+
+    private void checkSameSize(DotMatrix other) {
+        if (other.rows != rows || other.cols != cols) {
+            throw new IllegalArgumentException("size mismatch: " + other.rows + "x" + other.cols
+                    + " != " + rows + "x" + cols);
+        }
+    }
+
+    /** 读取从 bit 开始的 len(1~64) 位，低位对齐返回 **/
+    private static long readBits(long[] src, int bit, int len) {
+        int w = bit >>> 6;
+        int b = bit & 63;
+        long v = src[w] >>> b;
+        if (b != 0 && b + len > 64) {
+            v |= src[w + 1] << (64 - b);
+        }
+        return len == 64 ? v : v & ((1L << len) - 1);
+    }
+
+    /** 按位复制，允许 src 与 dst 为同一数组且 srcBit >= dstBit **/
+    private static void copyBits(long[] src, int srcBit, long[] dst, int dstBit, int n) {
+        while (n > 0) {
+            int dw = dstBit >>> 6;
+            int db = dstBit & 63;
+            int len = Math.min(n, 64 - db);
+            long bits = readBits(src, srcBit, len);
+            long mask = (len == 64 ? -1L : (1L << len) - 1) << db;
+            dst[dw] = (dst[dw] & ~mask) | ((bits << db) & mask);
+            srcBit += len;
+            dstBit += len;
+            n -= len;
+        }
+    }
+
+    private static void clearBits(long[] dst, int bit, int n) {
+        while (n > 0) {
+            int w = bit >>> 6;
+            int b = bit & 63;
+            int len = Math.min(n, 64 - b);
+            long mask = (len == 64 ? -1L : (1L << len) - 1) << b;
+            dst[w] &= ~mask;
+            bit += len;
+            n -= len;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.backlight.data;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.Arrays;
+
+/**
+ * 点颜色调色板
+ * 点阵中每点存放调色板下标，下标 0 为灭点，其余每项一种亮点颜色（ARGB）。
+ * 彩色跑马灯的帧按每点 8 位存放下标，调色板随跑马灯一起保存；
+ * 灰度模式下调色板由亮度级数生成，下标即亮度级别
+ */
+public final class DotPalette {
+    public static final int MAX_COLORS = 256;
+    public static final int BITS_PER_DOT = 8;      // 彩色帧的每点位数
+    private static final double GAMMA = 2.2;
+    // 各位数的灰度调色板，不可变，生成一次后共用（渲染线程每帧都会取）
+    private static final DotPalette[] grayscales = new DotPalette[BITS_PER_DOT + 1];
+
+    private final int[] colors;
+
+    /**
+     * @param colors 各下标的颜色，colors[0] 为灭点颜色，共 2~256 项
+     */
+    public DotPalette(int[] colors) {
+        if (colors.length < 2 || colors.length > MAX_COLORS) {
+            throw new IllegalArgumentException("palette size must be 2.." + MAX_COLORS + ": " + colors.length);
+        }
+        this.colors = colors.clone();
+    }
+
+    /** RGB 屏常用的 8 色：灭、白、红、绿、蓝、黄、青、品红 **/
+    public static DotPalette standard() {
+        return new DotPalette(new int[]{
+                0xFF000000, 0xFFFFFFFF, 0xFFFF0000, 0xFF00FF00,
+                0xFF0000FF, 0xFFFFFF00, 0xFF00FFFF, 0xFFFF00FF
+        });
+    }
+
+    /**
+     * 灰度调色板：级别按线性光强均分，换算成屏幕灰度时做伽马编码
+     * @param bitsPerDot 每点位数（1/2/4）
+     */
+    public static DotPalette grayscale(int bitsPerDot) {
+        DotPalette cached = grayscales[bitsPerDot];
+        if (cached != null) return cached;
+        int maxLevel = (1 << bitsPerDot) - 1;
+        int[] colors = new int[maxLevel + 1];
+        for (int v = 0; v <= maxLevel; v++) {
+            int gray = (int) Math.round(255 * Math.pow(v / (double) maxLevel, 1 / GAMMA));
+            colors[v] = 0xFF000000 | gray << 16 | gray << 8 | gray;
+        }
+        // 并发时可能重复生成，内容相同，谁覆盖都无妨
+        cached = new DotPalette(colors);
+        grayscales[bitsPerDot] = cached;
+        return cached;
+    }
+
+    public int size() { return colors.length; }
+
+    public int getColor(int index) { return colors[index]; }
+
+    public int[] getColors() { return colors.clone(); }
+
+    /** 转为 [ARGB, ...] 形式的 JSON，与跑马灯记录一起保存 **/
+    public String toJson() {
+        JSONArray array = new JSONArray();
+        for (int c : colors) array.put(c);
+        return array.toString();
+    }
+
+    /**
+     * @return 调色板，json 为空（灰度跑马灯）时返回 null
+     */
+    public static DotPalette fromJson(String json) throws JSONException {
+        if (json == null || json.isEmpty()) return null;
+        JSONArray array = new JSONArray(json);
+        int[] colors = new int[array.length()];
+        for (int i = 0; i < colors.length; i++) colors[i] = array.getInt(i);
+        return new DotPalette(colors);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof DotPalette && Arrays.equals(colors, ((DotPalette) o).colors);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(colors);
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.backlight.data;
 
+import androidx.room.ColumnInfo;
 import androidx.room.Entity;
 import androidx.room.PrimaryKey;
 
@@ -9,16 +10,31 @@ public class MarqueeEntity {
     public int id;
     public String name;
     public String mode;
-    public String framesJson;
+    public String framesJson;   // 旧记录的逐帧 JSON，新记录为 null（改存 source）
     public int speed;
     public String gifPath;  // 新字段：GIF 文件在 APP 内部的路径
+    @ColumnInfo(defaultValue = "15")
+    public int gridRows;    // 点阵行数（旧记录为 15）
+    @ColumnInfo(defaultValue = "20")
+    public int gridCols;    // 点阵列数（旧记录为 20）
+    @ColumnInfo(defaultValue = "0")
+    public int bitsPerDot;  // 帧的每点位数（1/2/4/8），旧记录为 0
+    public String palette;  // 彩色跑马灯的调色板 JSON，灰度跑马灯为 null
+    public String source;   // 数据源 JSON（文字的排版参数或整段点阵），第 k 帧为从第 k 列起的一屏
 
-    public MarqueeEntity(String name, String mode, String framesJson, int speed, String gifPath) {
+    public MarqueeEntity(String name, String mode, String framesJson, int speed, String gifPath,
+                         int gridRows, int gridCols, int bitsPerDot, String palette,
+                         String source) {
         this.name = name;
         this.mode = mode;
         this.framesJson = framesJson;
         this.speed = speed;
         this.gifPath = gifPath;
+        this.gridRows = gridRows;
+        this.gridCols = gridCols;
+        this.bitsPerDot = bitsPerDot;
+        this.palette = palette;
+        this.source = source;
     }
 }
 
@@ -1,13 +1,22 @@
 package com.example.backlight.utils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.Config;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 
+import com.example.backlight.data.DotMatrix;
+
 public class AnimatedGifEncoder {
 
     protected int width; // image size
@@ -32,7 +41,9 @@ public class AnimatedGifEncoder {
 
     protected Bitmap image; // current frame
 
-    protected byte[] pixels; // BGR byte array from frame
+    protected int[] rgbPixels; // RGB int array from frame
+
+    protected byte[] pixels; // BGR byte array for the quantizer
 
     protected byte[] indexedPixels; // converted frame indexed to palette
 
@@ -54,6 +65,56 @@ public class AnimatedGifEncoder {
 
     protected int sample = 10; // default sample interval for quantizer
 
+    protected byte[] fixedTab; // RGB palette given by setPalette, null = quantize each frame
+
+    protected int fixedCount; // number of real entries in fixedTab
+
+    protected ColorIndexMap fixedIndex; // RGB -> fixedTab index, filled as colors are seen
+
+    protected boolean globalPalette = false; // reuse the first frame's color table for all frames
+
+    protected byte[] globalTab; // color table written after the LSD
+
+    protected ColorIndexMap globalIndex; // RGB -> globalTab index when globalPalette is set
+
+    protected boolean deltaFrames = false; // write only the changed rectangle of each frame
+
+    protected byte[] prevIndexed; // previous frame indexed to globalTab, null if not comparable
+
+    protected int deltaTransIndex = -1; // free globalTab entry marking unchanged pixels
+
+    protected boolean deltaFrame; // current frame is a sub-image over the previous one
+
+    protected int frameX, frameY, frameWidth, frameHeight; // sub-image written for the current frame
+
+    protected Executor executor; // worker pool for parallel mode, null = encode on the caller thread
+
+    protected int maxPending; // frames in flight before addFrame waits for the oldest
+
+    protected final ArrayDeque<CompletableFuture<EncodedFrame>> pending = new ArrayDeque<>(); // in output order
+
+    protected CompletableFuture<byte[]> lastIndexed; // indexed pixels of the newest parallel frame
+
+    protected DotStamp stamp; // stamp whose indices are cached below
+
+    protected byte[] stampTab; // color table the stamp was indexed to
+
+    protected byte[] stampBackground; // stamp background indexed, width * height
+
+    protected byte[][] stampTiles; // stamp tiles indexed, by tile index
+
+    /**
+     * A frame mapped and compressed on a worker, waiting to be written in order.
+     */
+    protected static class EncodedFrame {
+        byte[] indexed; // whole frame indexed to the global table, for the next delta
+        byte[] pixels; // indexed pixels of the sub-image
+        int x, y, width, height; // sub-image position and size
+        boolean delta; // sub-image is drawn over the previous frame
+        int delay, dispose; // GCE values captured when the frame was added
+        byte[] lzw; // compressed image data
+    }
+
     /**
      * Sets the delay time between each frame, or changes it for subsequent frames
      * (applies to last frame added).
@@ -108,12 +169,131 @@ public class AnimatedGifEncoder {
         transparent = c;
     }
 
+    /**
+     * Sets a fixed palette used for every subsequent frame instead of running
+     * the NeuQuant quantizer. Pixels are mapped to the nearest palette color,
+     * so frames drawn only with these colors are encoded exactly and at the
+     * speed of a monochrome frame. May be set to null to quantize again; finish() clears it.
+     *
+     * @param colors
+     *          int[] ARGB colors (alpha ignored), at most 256 entries.
+     */
+    public void setPalette(int[] colors) {
+        if (colors == null) {
+            fixedTab = null;
+            fixedCount = 0;
+            fixedIndex = null;
+            return;
+        }
+        if (colors.length == 0 || colors.length > 256) {
+            throw new IllegalArgumentException("palette size must be 1..256: " + colors.length);
+        }
+        fixedTab = new byte[3 * 256];
+        for (int i = 0; i < colors.length; i++) {
+            fixedTab[i * 3] = (byte) ((colors[i] >> 16) & 0xff);
+            fixedTab[i * 3 + 1] = (byte) ((colors[i] >> 8) & 0xff);
+            fixedTab[i * 3 + 2] = (byte) (colors[i] & 0xff);
+        }
+        fixedCount = colors.length;
+        fixedIndex = new ColorIndexMap(256);
+        // the first entry wins when a color is listed twice
+        for (int i = colors.length - 1; i >= 0; i--) {
+            fixedIndex.put(colors[i] & 0xffffff, i);
+        }
+    }
+
+    /**
+     * Sets a fixed palette holding the colors of rgb exactly, or a quantized
+     * one when there are more than 256. Used by the stamp path to build the
+     * palette from the stamp's pixels.
+     */
+    protected void setPaletteFromPixels(int[] rgb) {
+        int total = rgb.length;
+        ColorIndexMap map = new ColorIndexMap(256);
+        int[] colors = new int[256];
+        int count = 0;
+        for (int i = 0; i < total && count <= 256; i++) {
+            if (map.get(rgb[i]) < 0) {
+                if (count < 256) {
+                    colors[count] = rgb[i];
+                }
+                map.put(rgb[i], count++);
+            }
+        }
+        if (count <= 256) {
+            setPalette(java.util.Arrays.copyOf(colors, Math.max(count, 1)));
+            return;
+        }
+        byte[] bgr = new byte[total * 3];
+        for (int i = 0; i < total; i++) {
+            bgr[i * 3] = (byte) (rgb[i] & 0xff);
+            bgr[i * 3 + 1] = (byte) ((rgb[i] >> 8) & 0xff);
+            bgr[i * 3 + 2] = (byte) ((rgb[i] >> 16) & 0xff);
+        }
+        byte[] tab = new NeuQuant(bgr, bgr.length, sample).process();
+        int[] quantized = new int[tab.length / 3];
+        for (int i = 0; i < quantized.length; i++) {
+            quantized[i] = ((tab[i * 3 + 2] & 0xff) << 16) | ((tab[i * 3 + 1] & 0xff) << 8) | (tab[i * 3] & 0xff);
+        }
+        setPalette(quantized);
+    }
+
+    /**
+     * Sets whether every frame is encoded against the color table of the
+     * first frame, which is written once as the global color table. Later
+     * frames then carry no local color table and skip building one; colors
+     * missing from the first frame map to their closest entry. A fixed palette
+     * set by <code>setPalette</code> is always written this way. Must be
+     * invoked before the first image is added.
+     *
+     * @param global
+     *          true to reuse the first frame's color table.
+     */
+    public void setGlobalPalette(boolean global) {
+        globalPalette = global;
+    }
+
+    /**
+     * Sets whether frames sharing the global color table are written as
+     * deltas: only the bounding rectangle of pixels that differ from the
+     * previous frame is encoded, unchanged pixels inside it use a spare
+     * palette entry as the transparent index, and frames are kept on screen
+     * (dispose 1) so each delta draws over its predecessor. Ignored while a
+     * transparent color is set. Must be invoked before the first image is
+     * added.
+     *
+     * @param delta
+     *          true to write changed rectangles only.
+     */
+    public void setDeltaFrames(boolean delta) {
+        deltaFrames = delta;
+    }
+
+    /**
+     * Sets a worker pool to encode frames on. Frames that use the global color
+     * table (see <code>setPalette</code> and <code>setGlobalPalette</code>)
+     * are then mapped to the palette and LZW-compressed on the pool while the
+     * caller prepares the next frame; their output is written in the order
+     * the frames were added. Other frames are still encoded on the calling
+     * thread, after all pending frames are written.
+     *
+     * @param executor
+     *          pool to encode frames on, or null to encode on the calling thread.
+     * @param maxPendingFrames
+     *          frames allowed in flight before addFrame waits for the oldest.
+     */
+    public void setExecutor(Executor executor, int maxPendingFrames) {
+        this.executor = executor;
+        this.maxPending = Math.max(1, maxPendingFrames);
+    }
+
     /**
      * Adds next GIF frame. The frame is not written immediately, but is actually
      * deferred until the next frame is received so that timing data can be
      * inserted. Invoking <code>finish()</code> flushes all frames. If
      * <code>setSize</code> was not invoked, the size of the first image is used
-     * for all subsequent frames.
+     * for all subsequent frames. The pixels are copied before this returns, so
+     * the caller keeps ownership of the bitmap and may reuse or recycle it.
      *
      * @param im
      *          BufferedImage containing frame to write.
@@ -123,41 +303,206 @@ public class AnimatedGifEncoder {
         if ((im == null) || !started) {
             return false;
         }
+        if (!sizeSet) {
+            // use first frame's size
+            setSize(im.getWidth(), im.getHeight());
+        }
+        image = im;
+        getImagePixels(); // convert to correct format if necessary
+        image = null; // pixels are copied, don't hold on to the caller's bitmap
+        return addImagePixels();
+    }
+
+    /**
+     * Adds next GIF frame given as RGB pixels, row by row, one int per pixel
+     * (alpha ignored). Same as <code>addFrame(Bitmap)</code> for a frame
+     * that has already been read; the size must have been set.
+     *
+     * @param rgb
+     *          width * height pixels, copied before this returns.
+     * @return true if successful.
+     */
+    protected boolean addPixels(int[] rgb) {
+        if (rgb == null || !started || !sizeSet || rgb.length != width * height) {
+            return false;
+        }
+        rgbPixels = new int[rgb.length];
+        for (int i = 0; i < rgb.length; i++) {
+            rgbPixels[i] = rgb[i] & 0xffffff;
+        }
+        return addImagePixels();
+    }
+
+    /**
+     * Encodes the frame held in rgbPixels, or hands it to the worker pool.
+     */
+    protected boolean addImagePixels() {
         boolean ok = true;
         try {
-            if (!sizeSet) {
-                // use first frame's size
-                setSize(im.getWidth(), im.getHeight());
+            if (canEncodeInParallel()) {
+                final int[] rgb = rgbPixels;
+                final byte[] tab = globalTab;
+                final ColorIndexMap index = fixedTab != null ? fixedIndex : globalIndex;
+                rgbPixels = null;
+                submitFrame(() -> {
+                    byte[] result = new byte[rgb.length];
+                    indexPixels(rgb, result, rgb.length, tab, index, new ColorIndexMap(16));
+                    return result;
+                });
+                return true;
             }
-            if(image != null) {
-                // recycle the old Bitmap instance to free its memory
-                image.recycle();
-            }
-            image = im;
-            getImagePixels(); // convert to correct format if necessary
+            writePending(0); // earlier frames go out first
             analyzePixels(); // build color table & map pixels
-            if (firstFrame) {
-                writeLSD(); // logical screen descriptior
-                writePalette(); // global color table
-                if (repeat >= 0) {
-                    // use NS app extension to indicate reps
-                    writeNetscapeExt();
+            writeFrame();
+        } catch (IOException | CompletionException e) {
+            ok = false;
+        }
+
+        return ok;
+    }
+
+    /**
+     * Adds a frame of dot states without drawing it. Each pixel's palette
+     * index is copied from the stamp: the background where a dot is off, and
+     * the pre-rasterized tile of the dot's value where it is lit. If no fixed
+     * palette is set, the stamp's colors become the fixed palette. The frame
+     * may be changed or reused by the caller once this returns.
+     *
+     * @param frame
+     *          DotMatrix with the same rows and columns as the stamp.
+     * @param stamp
+     *          DotStamp rendered for the dot grid.
+     * @return true if successful.
+     */
+    public boolean addFrame(DotMatrix frame, DotStamp stamp) {
+        if (frame == null || stamp == null || !started) {
+            return false;
+        }
+        boolean ok = true;
+        try {
+            if (!sizeSet) {
+                setSize(stamp.getWidth(), stamp.getHeight());
+            }
+            if (fixedTab == null || stamp != this.stamp || fixedTab != stampTab) {
+                // indexing the stamp adds colors to fixedIndex, which frames
+                // still in flight on the pool read; let them finish first
+                writePending(0);
+                if (fixedTab == null) {
+                    setPaletteFromPixels(stamp.samplePixels());
                 }
+                indexStamp(stamp);
             }
-            writeGraphicCtrlExt(); // write graphic control extension
-            writeImageDesc(); // image descriptor
-            if (!firstFrame) {
-                writePalette(); // local color table
+            if (canEncodeInParallel()) {
+                final DotMatrix dots = frame.copy();
+                final byte[] bg = stampBackground;
+                final byte[][] tiles = stampTiles;
+                submitFrame(() -> composeDots(dots, stamp, bg, tiles));
+                return true;
             }
-            writePixels(); // encode and write pixel data
-            firstFrame = false;
-        } catch (IOException e) {
+            writePending(0); // earlier frames go out first
+            for (int i = 0; i < 256; i++) {
+                usedEntry[i] = i < fixedCount;
+            }
+            colorTab = fixedTab;
+            indexedPixels = composeDots(frame, stamp, stampBackground, stampTiles);
+            colorDepth = 8;
+            palSize = 7;
+            if (transparent != -1) {
+                transIndex = findClosest(transparent);
+            }
+            writeFrame();
+        } catch (IOException | CompletionException e) {
             ok = false;
         }
 
         return ok;
     }
 
+    /**
+     * Maps the stamp's background and tiles to the fixed palette once, so
+     * frames are composed from indices only. Colors found here are added to
+     * fixedIndex, so no frame may be pending on the pool.
+     */
+    protected void indexStamp(DotStamp stamp) {
+        for (int i = 0; i < 256; i++) {
+            usedEntry[i] = i < fixedCount;
+        }
+        int[] bg = stamp.getBackground();
+        stampBackground = new byte[width * height];
+        int w = Math.min(width, stamp.getWidth());
+        int[] row = new int[w];
+        byte[] indexed = new byte[w];
+        for (int y = 0; y < Math.min(height, stamp.getHeight()); y++) {
+            System.arraycopy(bg, y * stamp.getWidth(), row, 0, w);
+            indexPixels(row, indexed, w, fixedTab, fixedIndex, fixedIndex);
+            System.arraycopy(indexed, 0, stampBackground, y * width, w);
+        }
+        stampTiles = new byte[stamp.getTileCount()][];
+        for (int v = 1; v < stampTiles.length; v++) {
+            int[] t = stamp.getTile(v);
+            stampTiles[v] = new byte[t.length];
+            indexPixels(t, stampTiles[v], t.length, fixedTab, fixedIndex, fixedIndex);
+        }
+        this.stamp = stamp;
+        stampTab = fixedTab;
+    }
+
+    /**
+     * Composes the indexed pixels of a frame: the background with the tile of
+     * every lit dot copied over it, clipped to the frame size.
+     */
+    protected byte[] composeDots(DotMatrix frame, DotStamp stamp, byte[] bg, byte[][] tiles) {
+        byte[] px = bg.clone();
+        int tile = stamp.getTile();
+        int rows = Math.min(frame.getRows(), stamp.getRows());
+        int cols = Math.min(frame.getCols(), stamp.getCols());
+        int frameMax = frame.getMaxLevel();
+        for (int r = 0; r < rows; r++) {
+            int top = stamp.getCellTop(r);
+            int h = Math.min(tile, height - top);
+            for (int c = frame.nextSetColumn(r, 0); c >= 0 && c < cols; c = frame.nextSetColumn(r, c + 1)) {
+                byte[] t = tiles[stamp.tileIndex(frame.get(r, c), frameMax)];
+                int left = stamp.getCellLeft(c);
+                int w = Math.min(tile, width - left);
+                if (w <= 0) {
+                    break;
+                }
+                for (int ty = 0; ty < h; ty++) {
+                    System.arraycopy(t, ty * tile, px, (top + ty) * width + left, w);
+                }
+            }
+        }
+        return px;
+    }
+
+    /**
+     * Writes the current frame, whose indexed pixels and color table are set,
+     * preceded by the file header for the first frame.
+     */
+    protected void writeFrame() throws IOException {
+        if (firstFrame) {
+            globalTab = colorTab;
+            if (globalPalette && fixedTab == null) {
+                globalIndex = indexColorTable(colorTab);
+            }
+            deltaTransIndex = findUnusedEntry();
+            writeLSD(); // logical screen descriptior
+            writePalette(); // global color table
+            if (repeat >= 0) {
+                // use NS app extension to indicate reps
+                writeNetscapeExt();
+            }
+        }
+        cropToChanges(); // sub-image of changed pixels for delta frames
+        writeGraphicCtrlExt(); // write graphic control extension
+        writeImageDesc(); // image descriptor
+        if (colorTab != globalTab) {
+            writePalette(); // local color table
+        }
+        writePixels(); // encode and write pixel data
+        firstFrame = false;
+    }
+
     /**
      * Flushes any pending data and closes output file. If writing to an
      * OutputStream, the stream is not closed.
@@ -168,22 +513,39 @@ public class AnimatedGifEncoder {
         boolean ok = true;
         started = false;
         try {
+            writePending(0);
             out.write(0x3b); // gif trailer
             out.flush();
             if (closeStream) {
                 out.close();
             }
-        } catch (IOException e) {
+        } catch (IOException | CompletionException e) {
             ok = false;
         }
 
         // reset for subsequent use
+        pending.clear();
+        lastIndexed = null;
+        stamp = null;
+        stampTab = null;
+        stampBackground = null;
+        stampTiles = null;
         transIndex = 0;
         out = null;
         image = null;
         pixels = null;
+        rgbPixels = null;
         indexedPixels = null;
         colorTab = null;
+        fixedTab = null; // a palette belongs to one stream; the next one sets its own
+        fixedCount = 0;
+        fixedIndex = null;
+        globalTab = null;
+        globalIndex = null;
+        prevIndexed = null;
+        deltaTransIndex = -1;
+        deltaFrame = false;
+        frameX = frameY = frameWidth = frameHeight = 0;
         closeStream = false;
         firstFrame = true;
 
@@ -276,13 +638,47 @@ public class AnimatedGifEncoder {
     }
 
     /**
-     * Analyzes image colors and creates color map.
+     * Analyzes image colors and creates color map. A fixed palette set by
+     * setPalette is used as is; otherwise a frame with at most 256 distinct
+     * colors gets an exact palette of those colors. Only frames with more
+     * colors go through the NeuQuant quantizer.
      */
     protected void analyzePixels() {
-        int len = pixels.length;
-        int nPix = len / 3;
+        int nPix = rgbPixels.length;
         indexedPixels = new byte[nPix];
-        NeuQuant nq = new NeuQuant(pixels, len, sample);
+        if (fixedTab != null) {
+            for (int i = 0; i < 256; i++) {
+                usedEntry[i] = i < fixedCount;
+            }
+            mapToPalette(nPix, fixedTab, fixedIndex);
+        } else if (globalIndex != null) {
+            // usedEntry still describes the global table built for the first frame
+            mapToPalette(nPix, globalTab, globalIndex);
+        } else if (!mapToExactPalette(nPix)) {
+            quantizePixels(nPix);
+        }
+        rgbPixels = null;
+        colorDepth = 8;
+        palSize = 7;
+        // get closest match to transparent color if specified
+        if (transparent != -1) {
+            transIndex = findClosest(transparent);
+        }
+    }
+
+    /**
+     * Builds a reduced palette with NeuQuant and maps pixels to it.
+     */
+    protected void quantizePixels(int nPix) {
+        pixels = new byte[nPix * 3];
+        for (int i = 0; i < nPix; i++) {
+            int td = rgbPixels[i];
+            int tind = i * 3;
+            pixels[tind++] = (byte) ((td >> 0) & 0xFF);
+            pixels[tind++] = (byte) ((td >> 8) & 0xFF);
+            pixels[tind] = (byte) ((td >> 16) & 0xFF);
+        }
+        NeuQuant nq = new NeuQuant(pixels, pixels.length, sample);
         // initialize quantizer
         colorTab = nq.process(); // create reduced palette
         // convert map from BGR to RGB
@@ -300,12 +696,242 @@ public class AnimatedGifEncoder {
             indexedPixels[i] = (byte) index;
         }
         pixels = null;
-        colorDepth = 8;
-        palSize = 7;
-        // get closest match to transparent color if specified
-        if (transparent != -1) {
-            transIndex = findClosest(transparent);
+    }
+
+    /**
+     * Collects the distinct colors of the frame into an exact palette.
+     *
+     * @return false if the frame has more than 256 colors and needs quantizing.
+     */
+    protected boolean mapToExactPalette(int nPix) {
+        ColorIndexMap map = new ColorIndexMap(256);
+        byte[] tab = new byte[3 * 256];
+        int count = 0;
+        int lastColor = -1;
+        int lastIndex = 0;
+        for (int i = 0; i < nPix; i++) {
+            int c = rgbPixels[i];
+            if (c != lastColor) {
+                lastColor = c;
+                lastIndex = map.get(c);
+                if (lastIndex < 0) {
+                    if (count == 256) {
+                        return false;
+                    }
+                    lastIndex = count++;
+                    map.put(c, lastIndex);
+                    tab[lastIndex * 3] = (byte) ((c >> 16) & 0xff);
+                    tab[lastIndex * 3 + 1] = (byte) ((c >> 8) & 0xff);
+                    tab[lastIndex * 3 + 2] = (byte) (c & 0xff);
+                }
+            }
+            indexedPixels[i] = (byte) lastIndex;
+        }
+        colorTab = tab;
+        for (int i = 0; i < 256; i++) {
+            usedEntry[i] = i < count;
+        }
+        return true;
+    }
+
+    /**
+     * Maps pixels to a palette that is reused across frames. Palette colors
+     * are found directly in the lookup table; any other color (e.g. an
+     * anti-aliased edge) is matched to its closest entry once and then
+     * remembered for later frames.
+     */
+    protected void mapToPalette(int nPix, byte[] tab, ColorIndexMap index) {
+        colorTab = tab;
+        indexPixels(rgbPixels, indexedPixels, nPix, tab, index, index);
+    }
+
+    /**
+     * Looks pixels up in index, then in misses, and otherwise stores the
+     * closest entry of tab in misses. Workers pass their own misses map so
+     * that the shared index is only read.
+     */
+    protected void indexPixels(int[] rgb, byte[] indexed, int nPix, byte[] tab,
+                               ColorIndexMap index, ColorIndexMap misses) {
+        int lastColor = -1;
+        int lastIndex = 0;
+        for (int i = 0; i < nPix; i++) {
+            int c = rgb[i];
+            if (c != lastColor) {
+                lastColor = c;
+                lastIndex = index.get(c);
+                if (lastIndex < 0 && misses != index) {
+                    lastIndex = misses.get(c);
+                }
+                if (lastIndex < 0) {
+                    lastIndex = findClosest(tab, c);
+                    misses.put(c, lastIndex);
+                }
+            }
+            indexed[i] = (byte) lastIndex;
+        }
+    }
+
+    /**
+     * Sets the sub-image for the current frame: the whole frame, or for a
+     * delta frame the bounding rectangle of pixels whose index differs from
+     * the previous frame, with unchanged pixels set to the transparent index.
+     */
+    protected void cropToChanges() {
+        EncodedFrame f;
+        if (!deltaFrames || transparent != -1 || colorTab != globalTab) {
+            prevIndexed = null;
+            f = cropFrame(indexedPixels, null, x, y);
+        } else {
+            f = cropFrame(indexedPixels, prevIndexed, x, y);
+            prevIndexed = f.indexed;
         }
+        indexedPixels = f.pixels;
+        frameX = f.x;
+        frameY = f.y;
+        frameWidth = f.width;
+        frameHeight = f.height;
+        deltaFrame = f.delta;
+    }
+
+    /**
+     * Crops indexed pixels of a whole frame to the rectangle that differs from
+     * prev; with no comparable prev the whole frame is kept.
+     */
+    protected EncodedFrame cropFrame(byte[] cur, byte[] prev, int left, int top) {
+        EncodedFrame f = new EncodedFrame();
+        f.indexed = cur;
+        f.pixels = cur;
+        f.x = left;
+        f.y = top;
+        f.width = width;
+        f.height = height;
+        if (prev == null || prev.length != cur.length) {
+            return f;
+        }
+        int minX = width, minY = height, maxX = -1, maxY = -1;
+        for (int row = 0, i = 0; row < height; row++) {
+            for (int col = 0; col < width; col++, i++) {
+                if (cur[i] != prev[i]) {
+                    if (col < minX) minX = col;
+                    if (col > maxX) maxX = col;
+                    if (row < minY) minY = row;
+                    maxY = row;
+                }
+            }
+        }
+        if (maxX < 0) {
+            // nothing changed: a single pixel keeps the frame and its delay
+            minX = maxX = 0;
+            minY = maxY = 0;
+        }
+        int w = maxX - minX + 1;
+        int h = maxY - minY + 1;
+        byte[] sub = new byte[w * h];
+        for (int row = 0; row < h; row++) {
+            int src = (minY + row) * width + minX;
+            for (int col = 0; col < w; col++, src++) {
+                sub[row * w + col] = deltaTransIndex >= 0 && cur[src] == prev[src]
+                        ? (byte) deltaTransIndex : cur[src];
+            }
+        }
+        f.pixels = sub;
+        f.x = left + minX;
+        f.y = top + minY;
+        f.width = w;
+        f.height = h;
+        f.delta = true;
+        return f;
+    }
+
+    /**
+     * Whether the frame just read into rgbPixels can be handed to the worker
+     * pool: it must be encoded against the global table, so no state of this
+     * frame feeds into the next one except its indexed pixels.
+     */
+    protected boolean canEncodeInParallel() {
+        if (executor == null || firstFrame || transparent != -1) {
+            return false;
+        }
+        return fixedTab != null ? fixedTab == globalTab : globalIndex != null;
+    }
+
+    /**
+     * Indexes and compresses a frame on the worker pool. The delta
+     * against the previous frame waits for that frame's indexed pixels only,
+     * so frames are still mapped concurrently.
+     */
+    protected void submitFrame(Supplier<byte[]> indexer) throws IOException {
+        final boolean delta = deltaFrames;
+        final int left = x, top = y, frameDelay = delay, frameDispose = dispose;
+        CompletableFuture<byte[]> indexed = CompletableFuture.supplyAsync(indexer, executor);
+        CompletableFuture<byte[]> prev = lastIndexed != null
+                ? lastIndexed : CompletableFuture.completedFuture(prevIndexed);
+        lastIndexed = indexed;
+        pending.add(indexed.thenCombineAsync(prev, (cur, p) -> {
+            EncodedFrame f = cropFrame(cur, delta ? p : null, left, top);
+            f.delay = frameDelay;
+            f.dispose = frameDispose;
+            ByteArrayOutputStream lzw = new ByteArrayOutputStream(f.pixels.length / 2 + 16);
+            try {
+                new LZWEncoder(f.width, f.height, f.pixels, 8).encode(lzw);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            f.lzw = lzw.toByteArray();
+            f.pixels = null;
+            return f;
+        }, executor));
+        writePending(maxPending);
+    }
+
+    /**
+     * Writes finished parallel frames in order until at most keep are left in
+     * flight, waiting for the oldest ones as needed.
+     */
+    protected void writePending(int keep) throws IOException {
+        while (pending.size() > keep) {
+            EncodedFrame f = pending.poll().join();
+            colorTab = globalTab;
+            frameX = f.x;
+            frameY = f.y;
+            frameWidth = f.width;
+            frameHeight = f.height;
+            deltaFrame = f.delta;
+            writeGraphicCtrlExt(f.delay, f.dispose);
+            writeImageDesc();
+            out.write(f.lzw);
+            prevIndexed = deltaFrames ? f.indexed : null;
+        }
+        if (pending.isEmpty()) {
+            lastIndexed = null;
+        }
+    }
+
+    /**
+     * Returns the first color table entry no pixel maps to, or -1 if all 256
+     * entries are in use.
+     */
+    protected int findUnusedEntry() {
+        for (int i = 0; i < 256; i++) {
+            if (!usedEntry[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Indexes the active entries of a color table, the first entry winning
+     * when a color appears twice.
+     */
+    protected ColorIndexMap indexColorTable(byte[] tab) {
+        ColorIndexMap index = new ColorIndexMap(256);
+        for (int i = tab.length / 3 - 1; i >= 0; i--) {
+            if (usedEntry[i]) {
+                index.put(((tab[i * 3] & 0xff) << 16) | ((tab[i * 3 + 1] & 0xff) << 8) | (tab[i * 3 + 2] & 0xff), i);
+            }
+        }
+        return index;
     }
 
     /**
@@ -313,18 +939,26 @@ public class AnimatedGifEncoder {
      *
      */
     protected int findClosest(int c) {
-        if (colorTab == null)
+        return findClosest(colorTab, c);
+    }
+
+    /**
+     * Returns index of the color in tab closest to c, among active entries
+     *
+     */
+    protected int findClosest(byte[] tab, int c) {
+        if (tab == null)
             return -1;
         int r = (c >> 16) & 0xff;
         int g = (c >> 8) & 0xff;
         int b = (c >> 0) & 0xff;
         int minpos = 0;
         int dmin = 256 * 256 * 256;
-        int len = colorTab.length;
+        int len = tab.length;
         for (int i = 0; i < len;) {
-            int dr = r - (colorTab[i++] & 0xff);
-            int dg = g - (colorTab[i++] & 0xff);
-            int db = b - (colorTab[i] & 0xff);
+            int dr = r - (tab[i++] & 0xff);
+            int dg = g - (tab[i++] & 0xff);
+            int db = b - (tab[i] & 0xff);
             int d = dr * dr + dg * dg + db * db;
             int index = i / 3;
             if (usedEntry[index] && (d < dmin)) {
@@ -337,7 +971,7 @@ public class AnimatedGifEncoder {
     }
 
     /**
-     * Extracts image pixels into byte array "pixels"
+     * Extracts image pixels into int array "rgbPixels" (alpha dropped)
      */
     protected void getImagePixels() {
         int w = image.getWidth();
@@ -347,18 +981,16 @@ public class AnimatedGifEncoder {
             Bitmap temp = Bitmap.createBitmap(width, height, Config.RGB_565);
             Canvas g = new Canvas(temp);
             g.drawBitmap(image, 0, 0, new Paint());
-            image = temp;
+            rgbPixels = getImageData(temp);
+            temp.recycle(); // only the resized copy is ours to free
+        } else {
+            rgbPixels = getImageData(image);
         }
-        int[] data = getImageData(image);
-        pixels = new byte[data.length * 3];
-        for (int i = 0; i < data.length; i++) {
-            int td = data[i];
-            int tind = i * 3;
-            pixels[tind++] = (byte) ((td >> 0) & 0xFF);
-            pixels[tind++] = (byte) ((td >> 8) & 0xFF);
-            pixels[tind] = (byte) ((td >> 16) & 0xFF);
+        for (int i = 0; i < rgbPixels.length; i++) {
+            rgbPixels[i] &= 0xffffff;
         }
     }
+
     protected int[] getImageData(Bitmap img) {
         int w = img.getWidth();
         int h = img.getHeight();
@@ -372,11 +1004,25 @@ public class AnimatedGifEncoder {
      * Writes Graphic Control Extension
      */
     protected void writeGraphicCtrlExt() throws IOException {
+        writeGraphicCtrlExt(delay, dispose);
+    }
+
+    /**
+     * Writes Graphic Control Extension with the delay and disposal code the
+     * frame was added with
+     */
+    protected void writeGraphicCtrlExt(int delay, int dispose) throws IOException {
         out.write(0x21); // extension introducer
         out.write(0xf9); // GCE label
         out.write(4); // data block size
         int transp, disp;
-        if (transparent == -1) {
+        int tIndex = transIndex;
+        if (transparent == -1 && deltaFrames) {
+            // keep every frame so the next delta is drawn over it
+            transp = deltaFrame && deltaTransIndex >= 0 ? 1 : 0;
+            tIndex = transp == 1 ? deltaTransIndex : 0;
+            disp = 1; // dispose = do not dispose
+        } else if (transparent == -1) {
             transp = 0;
             disp = 0; // dispose = no action
         } else {
@@ -395,7 +1041,7 @@ public class AnimatedGifEncoder {
                 transp); // 8 transparency flag
 
         writeShort(delay); // delay x 1/100 sec
-        out.write(transIndex); // transparent color index
+        out.write(tIndex); // transparent color index
         out.write(0); // block terminator
     }
 
@@ -404,13 +1050,13 @@ public class AnimatedGifEncoder {
      */
     protected void writeImageDesc() throws IOException {
         out.write(0x2c); // image separator
-        writeShort(x); // image position x,y = 0,0
-        writeShort(y);
-        writeShort(width); // image size
-        writeShort(height);
+        writeShort(frameX); // image position x,y = 0,0
+        writeShort(frameY);
+        writeShort(frameWidth); // image size
+        writeShort(frameHeight);
         // packed fields
-        if (firstFrame) {
-            // no LCT - GCT is used for first (or only) frame
+        if (colorTab == globalTab) {
+            // no LCT - GCT is used for first (or only) frame, or all frames sharing it
             out.write(0);
         } else {
             // specify normal LCT
@@ -468,7 +1114,7 @@ public class AnimatedGifEncoder {
      * Encodes and writes pixel data
      */
     protected void writePixels() throws IOException {
-        LZWEncoder encoder = new LZWEncoder(width, height, indexedPixels, colorDepth);
+        LZWEncoder encoder = new LZWEncoder(frameWidth, frameHeight, indexedPixels, colorDepth);
         encoder.encode(out);
     }
 
@@ -0,0 +1,249 @@
+package com.example.backlight.utils;
+
+import com.example.backlight.data.DotMatrix;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 点阵字体（BDF / PSF1 / PSF2）
+ * 字体文件只解析一次，每个字形直接存成高度为字体行数、宽度为步进宽度的位压缩点阵，
+ * 显示时按列复制即可，不经过位图绘制和阈值采样，在字体设计的行数下逐点精确
+ */
+public class BitmapFont {
+    private static final int PSF1_MAGIC = 0x0436;       // 小端读取的 36 04
+    private static final int PSF1_MODE_512 = 0x01;
+    private static final int PSF1_MODE_HASTAB = 0x02;
+    private static final int PSF2_MAGIC = 0x864ab572;   // 小端读取的 72 b5 4a 86
+    private static final int PSF2_HAS_UNICODE_TABLE = 0x01;
+
+    private final String name;
+    private final int height;                        // 字体行数
+    private final Map<Integer, DotMatrix> glyphs;     // 码点 → 字形，值为 null 表示宽度为 0 的字符
+
+    private BitmapFont(String name, int height, Map<Integer, DotMatrix> glyphs) {
+        this.name = name;
+        this.height = height;
+        this.glyphs = glyphs;
+    }
+
+    public String getName() { return name; }
+
+    public int getHeight() { return height; }
+
+    /** 字体是否包含该字符 **/
+    public boolean hasGlyph(int codePoint) {
+        return glyphs.containsKey(codePoint);
+    }
+
+    /**
+     * 字符的点阵，行数为 getHeight()，列数即步进宽度
+     * @return 点阵，宽度为 0 或字体中没有的字符返回 null
+     */
+    public DotMatrix getGlyph(int codePoint) {
+        return glyphs.get(codePoint);
+    }
+
+    /**
+     * 解析字体文件，按文件头自动识别 PSF1、PSF2，否则按 BDF 文本解析
+     * @param name 字体名（一般为 assets 中的路径）
+     */
+    public static BitmapFont load(String name, InputStream in) throws IOException {
+        byte[] data = readAll(in);
+        if (data.length >= 4 && readInt(data, 0) == PSF2_MAGIC) return parsePsf2(name, data);
+        if (data.length >= 4 && readShort(data, 0) == PSF1_MAGIC) return parsePsf1(name, data);
+        return parseBdf(name, new String(data, StandardCharsets.ISO_8859_1));
+    }
+
+    // ---------- BDF ----------
+
+    private static BitmapFont parseBdf(String name, String text) throws IOException {
+        String[] lines = text.split("\r?\n");
+        int ascent = -1;
+        int descent = -1;
+        int bbxH = 0;
+        int bbxY = 0;
+        Map<Integer, DotMatrix> glyphs = new HashMap<>();
+
+        int i = 0;
+        // 文件头：读取字体整体的上升、下降高度
+        for (; i < lines.length; i++) {
+            String[] t = lines[i].trim().split("\\s+");
+            if (t[0].equals("FONTBOUNDINGBOX") && t.length >= 5) {
+                bbxH = Integer.parseInt(t[2]);
+                bbxY = Integer.parseInt(t[4]);
+            } else if (t[0].equals("FONT_ASCENT") && t.length >= 2) {
+                ascent = Integer.parseInt(t[1]);
+            } else if (t[0].equals("FONT_DESCENT") && t.length >= 2) {
+                descent = Integer.parseInt(t[1]);
+            } else if (t[0].equals("STARTCHAR")) {
+                break;
+            }
+        }
+        if (ascent < 0 || descent < 0) {
+            // 没有 FONT_ASCENT/FONT_DESCENT 时按字体包围盒计算
+            ascent = bbxH + bbxY;
+            descent = -bbxY;
+        }
+        int height = ascent + descent;
+        if (height <= 0) throw new IOException("invalid BDF font height: " + name);
+
+        // 逐个字形：ENCODING、DWIDTH、BBX 之后是每行一串十六进制位图
+        int encoding = -1;
+        int advance = -1;
+        int w = 0, h = 0, xOff = 0, yOff = 0;
+        for (; i < lines.length; i++) {
+            String[] t = lines[i].trim().split("\\s+");
+            switch (t[0]) {
+                case "STARTCHAR":
+                    encoding = -1;
+                    advance = -1;
+                    w = h = xOff = yOff = 0;
+                    break;
+                case "ENCODING":
+                    encoding = Integer.parseInt(t[1]);
+                    break;
+                case "DWIDTH":
+                    advance = Integer.parseInt(t[1]);
+                    break;
+                case "BBX":
+                    w = Integer.parseInt(t[1]);
+                    h = Integer.parseInt(t[2]);
+                    xOff = Integer.parseInt(t[3]);
+                    yOff = Integer.parseInt(t[4]);
+                    break;
+                case "BITMAP": {
+                    int cols = advance >= 0 ? advance : xOff + w;
+                    DotMatrix glyph = cols > 0 ? new DotMatrix(height, cols) : null;
+                    // 位图第 0 行在基线之上 yOff + h - 1 行处
+                    int top = ascent - (yOff + h);
+                    for (int r = 0; r < h && i + 1 < lines.length; r++) {
+                        String hex = lines[++i].trim();
+                        if (glyph == null) continue;
+                        int dr = top + r;
+                        if (dr < 0 || dr >= height) continue;
+                        for (int c = 0; c < w && (c >> 2) < hex.length(); c++) {
+                            int nibble = Character.digit(hex.charAt(c >> 2), 16);
+                            if (nibble > 0 && (nibble & (8 >> (c & 3))) != 0) {
+                                int dc = xOff + c;
+                                if (dc >= 0 && dc < cols) glyph.set(dr, dc, 1);
+                            }
+                        }
+                    }
+                    // ENCODING -1 为无码位的字形，直接丢弃
+                    if (encoding >= 0) glyphs.put(encoding, glyph);
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+        if (glyphs.isEmpty()) throw new IOException("no glyphs in BDF font: " + name);
+        return new BitmapFont(name, height, glyphs);
+    }
+
+    // ---------- PSF1 ----------
+
+    private static BitmapFont parsePsf1(String name, byte[] data) throws IOException {
+        int mode = data[2] & 0xFF;
+        int charSize = data[3] & 0xFF;
+        int count = (mode & PSF1_MODE_512) != 0 ? 512 : 256;
+        int glyphBase = 4;
+        int tableBase = glyphBase + count * charSize;
+        if (charSize == 0 || data.length < tableBase) throw new IOException("truncated PSF1 font: " + name);
+
+        DotMatrix[] bitmaps = new DotMatrix[count];
+        for (int g = 0; g < count; g++) {
+            bitmaps[g] = readPsfGlyph(data, glyphBase + g * charSize, charSize, 8, 1);
+        }
+        Map<Integer, DotMatrix> glyphs = new HashMap<>();
+        if ((mode & PSF1_MODE_HASTAB) != 0) {
+            // 每个字形一串 16 位小端码点，0xFFFE 之后为组合序列（忽略），0xFFFF 结束
+            int p = tableBase;
+            for (int g = 0; g < count && p + 1 < data.length; g++) {
+                boolean sequence = false;
+                while (p + 1 < data.length) {
+                    int u = readShort(data, p);
+                    p += 2;
+                    if (u == 0xFFFF) break;
+                    if (u == 0xFFFE) sequence = true;
+                    else if (!sequence) glyphs.putIfAbsent(u, bitmaps[g]);
+                }
+            }
+        } else {
+            for (int g = 0; g < count; g++) glyphs.put(g, bitmaps[g]);
+        }
+        return new BitmapFont(name, charSize, glyphs);
+    }
+
+    // ---------- PSF2 ----------
+
+    private static BitmapFont parsePsf2(String name, byte[] data) throws IOException {
+        if (data.length < 32) throw new IOException("truncated PSF2 header: " + name);
+        int headerSize = readInt(data, 8);
+        int flags = readInt(data, 12);
+        int count = readInt(data, 16);
+        int charSize = readInt(data, 20);
+        int height = readInt(data, 24);
+        int width = readInt(data, 28);
+        int rowBytes = (width + 7) / 8;
+        long tableBase = headerSize + (long) count * charSize;
+        if (height <= 0 || width <= 0 || charSize < height * rowBytes || data.length < tableBase) {
+            throw new IOException("invalid PSF2 font: " + name);
+        }
+
+        DotMatrix[] bitmaps = new DotMatrix[count];
+        for (int g = 0; g < count; g++) {
+            bitmaps[g] = readPsfGlyph(data, headerSize + g * charSize, height, width, rowBytes);
+        }
+        Map<Integer, DotMatrix> glyphs = new HashMap<>();
+        if ((flags & PSF2_HAS_UNICODE_TABLE) != 0) {
+            // 每个字形一段 UTF-8，0xFE 之后为组合序列（忽略），0xFF 结束
+            int p = (int) tableBase;
+            for (int g = 0; g < count && p < data.length; g++) {
+                int start = p;
+                while (p < data.length && (data[p] & 0xFF) != 0xFF && (data[p] & 0xFF) != 0xFE) p++;
+                DotMatrix bitmap = bitmaps[g];
+                new String(data, start, p - start, StandardCharsets.UTF_8).codePoints()
+                        .forEach(cp -> glyphs.putIfAbsent(cp, bitmap));
+                while (p < data.length && (data[p] & 0xFF) != 0xFF) p++;
+                p++;
+            }
+        } else {
+            for (int g = 0; g < count; g++) glyphs.put(g, bitmaps[g]);
+        }
+        return new BitmapFont(name, height, glyphs);
+    }
+
+    // PSF 字形按行存放，每行 rowBytes 字节，高位在左
+    private static DotMatrix readPsfGlyph(byte[] data, int offset, int height, int width, int rowBytes) {
+        DotMatrix glyph = new DotMatrix(height, width);
+        for (int r = 0; r < height; r++) {
+            int rowBase = offset + r * rowBytes;
+            for (int c = 0; c < width; c++) {
+                if ((data[rowBase + (c >> 3)] & (0x80 >> (c & 7))) != 0) glyph.set(r, c, 1);
+            }
+        }
+        return glyph;
+    }
+
+    private static int readShort(byte[] data, int p) {
+        return (data[p] & 0xFF) | (data[p + 1] & 0xFF) << 8;
+    }
+
+    private static int readInt(byte[] data, int p) {
+        return (data[p] & 0xFF) | (data[p + 1] & 0xFF) << 8 | (data[p + 2] & 0xFF) << 16 | (data[p + 3] & 0xFF) << 24;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) > 0) out.write(buf, 0, n);
+        return out.toByteArray();
+    }
+}
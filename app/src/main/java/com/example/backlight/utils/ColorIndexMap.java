@@ -0,0 +1,76 @@
+package com.example.backlight.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing map from a 24-bit RGB color to a palette index, used to
+ * index pixels without a linear palette search or boxing.
+ */
+class ColorIndexMap {
+    private static final int EMPTY = -1; // never a valid 24-bit color
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    ColorIndexMap(int expected) {
+        int cap = 16;
+        while (cap < expected * 2) {
+            cap <<= 1;
+        }
+        keys = new int[cap];
+        values = new int[cap];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * @return the index for color, or -1 if absent.
+     */
+    int get(int color) {
+        int mask = keys.length - 1;
+        for (int i = hash(color) & mask; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == color) {
+                return values[i];
+            }
+            if (k == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    void put(int color, int index) {
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        int mask = keys.length - 1;
+        int i = hash(color) & mask;
+        while (keys[i] != EMPTY && keys[i] != color) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == EMPTY) {
+            size++;
+        }
+        keys[i] = color;
+        values[i] = index;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int hash(int color) {
+        int h = color * 0x9E3779B1;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.backlight.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+import com.example.backlight.data.DotMatrix;
+import com.example.backlight.data.DotPalette;
+
+/**
+ * 点阵绘制器
+ * 按当前格子大小为调色板的每一项预先烘焙一张精灵图（1 位点阵即“灭点”“亮点”两张）和一张全灭的网格背景，
+ * 绘制一帧时只需贴背景再逐个贴亮点，不再对每个格子 drawCircle。
+ * 灰度模式的调色板由伽马校正查找表生成，点值即亮度级别；彩色模式的点值即调色板下标，
+ * 每项颜色预先分配一支画笔，绘制时不再为每个点设置画笔
+ */
+public class DotRenderer {
+    public static final int STATE_OFF = 0;
+    public static final int STATE_ON = 1;
+
+    private final Paint bgPaint;
+    private final Paint blackPaint;
+
+    private int rows;
+    private int cols;
+    private float cellSize;      // 格子边长（像素）
+    private float dotRadius;     // 点半径
+    private DotPalette palette = DotPalette.grayscale(1);
+    private boolean indexed = false;  // true=彩色，点值直接是调色板下标；false=灰度，点值按级数换算
+    private Paint[] dotPaints;   // 调色板每项一支画笔，烘焙精灵时使用
+    private Bitmap[] sprites;    // 调色板每项一张精灵图，下标即点值
+    private Bitmap[] dotMasks;   // 透明底上的彩色圆点（调色板每项一张），配合调暗滤镜绘制淡入淡出中的亮点
+    private Bitmap background;   // 整个网格全部为灭点时的画面
+
+    public DotRenderer() {
+        bgPaint = new Paint();
+        bgPaint.setColor(Color.GRAY);
+
+        blackPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        blackPaint.setColor(Color.BLACK);
+
+        dotPaints = createPaints(palette);
+    }
+
+    /**
+     * 灰度模式：设置亮度级数，与点阵的每点位数对应；级数变化时重新烘焙精灵图
+     * @param bitsPerDot 每点位数（1/2/4/8），8 位按 256 级灰度显示；调色板下标请用 setPalette
+     */
+    public void setBitsPerDot(int bitsPerDot) {
+        applyPalette(DotPalette.grayscale(bitsPerDot), false);
+    }
+
+    /**
+     * 彩色模式：点值为 palette 的下标
+     */
+    public void setPalette(DotPalette palette) {
+        applyPalette(palette, true);
+    }
+
+    public DotPalette getPalette() { return palette; }
+
+    private void applyPalette(DotPalette palette, boolean indexed) {
+        if (indexed == this.indexed && (palette == this.palette || palette.equals(this.palette))) return;
+        this.palette = palette;
+        this.indexed = indexed;
+        dotPaints = createPaints(palette);
+        if (sprites != null) bake();
+    }
+
+    private static Paint[] createPaints(DotPalette palette) {
+        Paint[] paints = new Paint[palette.size()];
+        for (int i = 0; i < paints.length; i++) {
+            paints[i] = new Paint(Paint.ANTI_ALIAS_FLAG);
+            paints[i].setColor(palette.getColor(i));
+        }
+        return paints;
+    }
+
+    /**
+     * 设置网格尺寸，尺寸变化时重新烘焙精灵图和背景
+     */
+    public void setGeometry(int rows, int cols, float cellSize) {
+        if (rows == this.rows && cols == this.cols && cellSize == this.cellSize && sprites != null) {
+            return;
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.cellSize = cellSize;
+        this.dotRadius = cellSize * 0.4f;
+        if (cellSize < 1f) {
+            sprites = null;
+            dotMasks = null;
+            background = null;
+            return;
+        }
+        bake();
+    }
+
+    private void bake() {
+        // 旧位图可能仍在保存线程中使用，这里只替换引用，交给 GC 回收
+        int tile = (int) Math.ceil(cellSize);
+        int n = palette.size();
+        Bitmap[] baked = new Bitmap[n];
+        Bitmap[] masks = new Bitmap[n];
+        baked[STATE_OFF] = bakeSprite(tile, blackPaint);
+        for (int v = 1; v < n; v++) {
+            baked[v] = bakeSprite(tile, dotPaints[v]);
+            // 遮罩保留调色板颜色，淡入淡出时由滤镜按比例调暗，各颜色互不混同
+            masks[v] = Bitmap.createBitmap(tile, tile, Bitmap.Config.ARGB_8888);
+            new Canvas(masks[v]).drawCircle(cellSize * 0.5f, cellSize * 0.5f, dotRadius, dotPaints[v]);
+        }
+
+        Bitmap bg = Bitmap.createBitmap(Math.max(1, getGridWidth()), Math.max(1, getGridHeight()),
+                Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bg);
+        canvas.drawRect(0, 0, bg.getWidth(), bg.getHeight(), bgPaint);
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                canvas.drawCircle(cellSize * (c + 0.5f), cellSize * (r + 0.5f), dotRadius, blackPaint);
+            }
+        }
+
+        sprites = baked;
+        dotMasks = masks;
+        background = bg;
+    }
+
+    private Bitmap bakeSprite(int tile, Paint dotPaint) {
+        Bitmap sprite = Bitmap.createBitmap(tile, tile, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(sprite);
+        canvas.drawRect(0, 0, tile, tile, bgPaint);
+        canvas.drawCircle(cellSize * 0.5f, cellSize * 0.5f, dotRadius, dotPaint);
+        return sprite;
+    }
+
+    public float getCellSize() { return cellSize; }
+    public float getDotRadius() { return dotRadius; }
+    public int getGridWidth() { return (int) (cellSize * cols); }
+    public int getGridHeight() { return (int) (cellSize * rows); }
+    public boolean isReady() { return sprites != null; }
+
+    /** 绘制全部为灭点的网格 **/
+    public void drawBackground(Canvas canvas) {
+        Bitmap background = this.background;
+        if (background != null) {
+            canvas.drawBitmap(background, 0, 0, null);
+        }
+    }
+
+    /**
+     * 绘制一帧点阵，frame 的尺寸需与网格一致，级数与本绘制器不同时按比例换算
+     */
+    public void drawFrame(Canvas canvas, DotMatrix frame) {
+        Bitmap[] sprites = this.sprites;
+        Bitmap background = this.background;
+        if (sprites == null) return;
+        canvas.drawBitmap(background, 0, 0, null);
+        int frameMax = frame.getMaxLevel();
+        for (int r = 0; r < rows; r++) {
+            float top = cellSize * r;
+            for (int c = frame.nextSetColumn(r, 0); c >= 0; c = frame.nextSetColumn(r, c + 1)) {
+                canvas.drawBitmap(sprites[levelIndex(frame.get(r, c), frameMax)], cellSize * c, top, null);
+            }
+        }
+    }
+
+    /**
+     * 用 paint（通常带调暗滤镜）在 frame 的每个亮点处绘制该点颜色的圆点，不绘制背景
+     */
+    public void drawLitDots(Canvas canvas, DotMatrix frame, Paint paint) {
+        Bitmap[] masks = this.dotMasks;
+        if (masks == null) return;
+        int frameMax = frame.getMaxLevel();
+        for (int r = 0; r < rows; r++) {
+            float top = cellSize * r;
+            for (int c = frame.nextSetColumn(r, 0); c >= 0; c = frame.nextSetColumn(r, c + 1)) {
+                Bitmap mask = masks[levelIndex(frame.get(r, c), frameMax)];
+                if (mask != null) canvas.drawBitmap(mask, cellSize * c, top, paint);
+            }
+        }
+    }
+
+    /** 在格子 (r, c) 处绘制一个点，state 为本绘制器调色板的下标 **/
+    public void drawDot(Canvas canvas, int r, int c, int state) {
+        Bitmap[] sprites = this.sprites;
+        if (sprites == null) return;
+        canvas.drawBitmap(sprites[Math.max(0, Math.min(state, sprites.length - 1))],
+                cellSize * c, cellSize * r, null);
+    }
+
+    // 帧的点值换算为精灵图下标
+    private int levelIndex(int v, int frameMax) {
+        int last = sprites.length - 1;
+        return indexed ? Math.min(v, last) : DotMatrix.scaleLevel(v, frameMax, last);
+    }
+
+    /**
+     * 只重绘 frame 中与 previous 不同的点，用于在已保留的网格画面上增量更新
+     * @return 重绘的点数
+     */
+    public int drawChanges(Canvas canvas, DotMatrix frame, DotMatrix previous) {
+        if (sprites == null) return 0;
+        int changed = 0;
+        int frameMax = frame.getMaxLevel();
+        for (int r = 0; r < rows; r++) {
+            for (int c = frame.nextDiffColumn(previous, r, 0); c >= 0; c = frame.nextDiffColumn(previous, r, c + 1)) {
+                drawDot(canvas, r, c, levelIndex(frame.get(r, c), frameMax));
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 生成一张与网格同尺寸的位图并绘制该帧
+     */
+    public Bitmap renderToBitmap(DotMatrix frame) {
+        Bitmap bmp = Bitmap.createBitmap(getGridWidth(), getGridHeight(), Bitmap.Config.ARGB_8888);
+        drawFrame(new Canvas(bmp), frame);
+        return bmp;
+    }
+
+    /**
+     * 取出当前网格底图和各精灵图的像素，生成导出 GIF 用的印章
+     * @return 印章，格子尚未布局（精灵图未烘焙）时返回 null
+     */
+    public DotStamp createStamp() {
+        Bitmap[] sprites = this.sprites;
+        Bitmap background = this.background;
+        if (sprites == null) return null;
+        int w = background.getWidth();
+        int h = background.getHeight();
+        int[] bg = new int[w * h];
+        background.getPixels(bg, 0, w, 0, 0, w, h);
+        int tile = sprites[0].getWidth();
+        int[][] tiles = new int[sprites.length][];
+        for (int v = 1; v < sprites.length; v++) {
+            tiles[v] = new int[tile * tile];
+            sprites[v].getPixels(tiles[v], 0, tile, 0, 0, tile, tile);
+        }
+        int[] left = new int[cols];
+        for (int c = 0; c < cols; c++) left[c] = Math.round(cellSize * c);
+        int[] top = new int[rows];
+        for (int r = 0; r < rows; r++) top[r] = Math.round(cellSize * r);
+        return new DotStamp(w, h, tile, bg, tiles, left, top, indexed);
+    }
+}
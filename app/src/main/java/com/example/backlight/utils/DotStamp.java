@@ -0,0 +1,77 @@
+package com.example.backlight.utils;
+
+import com.example.backlight.data.DotMatrix;
+
+/**
+ * 导出 GIF 用的点阵印章
+ * 网格底图和每种点值的圆点图块都从绘制器烘焙好的位图中一次取出像素，
+ * 编码时按点阵状态把图块的调色板下标直接拼成一帧，不再逐帧绘制位图再取回像素
+ */
+public final class DotStamp {
+    private final int width;           // 整帧宽度（像素）
+    private final int height;          // 整帧高度（像素）
+    private final int tile;            // 图块边长（像素）
+    private final int[] background;    // 全部为灭点的网格，RGB
+    private final int[][] tiles;       // 下标为精灵图下标，tile*tile 的 RGB；[0] 不用，灭点即底图
+    private final int[] cellLeft;      // 每列格子的左边像素坐标
+    private final int[] cellTop;       // 每行格子的上边像素坐标
+    private final boolean indexed;     // true=点值即调色板下标；false=按级数换算
+
+    DotStamp(int width, int height, int tile, int[] background, int[][] tiles,
+             int[] cellLeft, int[] cellTop, boolean indexed) {
+        this.width = width;
+        this.height = height;
+        this.tile = tile;
+        this.background = background;
+        this.tiles = tiles;
+        this.cellLeft = cellLeft;
+        this.cellTop = cellTop;
+        this.indexed = indexed;
+        for (int i = 0; i < background.length; i++) background[i] &= 0xFFFFFF;
+        for (int[] t : tiles) {
+            if (t == null) continue;
+            for (int i = 0; i < t.length; i++) t[i] &= 0xFFFFFF;
+        }
+    }
+
+    public int getWidth() { return width; }
+
+    public int getHeight() { return height; }
+
+    public int getRows() { return cellTop.length; }
+
+    public int getCols() { return cellLeft.length; }
+
+    int getTile() { return tile; }
+
+    int getTileCount() { return tiles.length; }
+
+    int[] getBackground() { return background; }
+
+    int[] getTile(int index) { return tiles[index]; }
+
+    int getCellLeft(int c) { return cellLeft[c]; }
+
+    int getCellTop(int r) { return cellTop[r]; }
+
+    /** 帧的点值换算为图块下标，与 DotRenderer 绘制时一致 **/
+    int tileIndex(int v, int frameMax) {
+        int last = tiles.length - 1;
+        return indexed ? Math.min(v, last) : DotMatrix.scaleLevel(v, frameMax, last);
+    }
+
+    /** 底图和全部图块的像素，导出的每帧颜色都在其中，可直接用来确定调色板 **/
+    int[] samplePixels() {
+        int total = background.length;
+        for (int[] t : tiles) if (t != null) total += t.length;
+        int[] rgb = new int[total];
+        System.arraycopy(background, 0, rgb, 0, background.length);
+        int off = background.length;
+        for (int[] t : tiles) {
+            if (t == null) continue;
+            System.arraycopy(t, 0, rgb, off, t.length);
+            off += t.length;
+        }
+        return rgb;
+    }
+}
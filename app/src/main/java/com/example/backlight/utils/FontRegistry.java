@@ -0,0 +1,187 @@
+package com.example.backlight.utils;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 全局字体注册表
+ * 字体文件在启动时由后台线程解析一次，之后所有视图共用同一个 Typeface；
+ * 配置好的文字画笔和字体度量按字号缓存，输入文字时不再重复解析字体、分配画笔。
+ * assets/fonts 下的 BDF/PSF 点阵字体同样只解析一次，供点阵档位按网格行数挑选
+ */
+public final class FontRegistry {
+    public static final String DEFAULT_FONT = "fonts/MiSans-Medium.ttf";
+    public static final String BITMAP_FONT_DIR = "fonts";
+
+    private static final String[] BITMAP_FONT_SUFFIXES = {".bdf", ".psf", ".psfu"};
+
+    // 每个字体文件一个加载任务，任务完成后就是缓存的 Typeface
+    private static final Map<String, FutureTask<Typeface>> fonts = new HashMap<>();
+    // 默认字体的文字样式，按字号缓存（字号由大小档位和网格行数决定）
+    private static final Map<Float, TextStyle> textStyles = new HashMap<>();
+    // 全部点阵字体的加载任务
+    private static FutureTask<List<BitmapFont>> bitmapFonts;
+
+    private FontRegistry() {
+    }
+
+    /**
+     * 配置好的文字画笔及其字体度量，使用方需自行保证同一时刻只有一个线程在用
+     */
+    public static final class TextStyle {
+        public final Paint paint;
+        public final Paint.FontMetrics metrics;
+
+        TextStyle(Typeface typeface, float textSize) {
+            paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            paint.setColor(Color.WHITE);
+            paint.setStyle(Paint.Style.FILL);
+            paint.setTextSize(textSize);
+            paint.setTypeface(typeface);
+            paint.setTextAlign(Paint.Align.LEFT);
+            metrics = paint.getFontMetrics();
+        }
+    }
+
+    /**
+     * 在后台线程预先加载默认字体和点阵字体，应用启动时调用
+     */
+    public static void preload(Context context) {
+        Context appContext = context.getApplicationContext();
+        FutureTask<Typeface> task;
+        synchronized (fonts) {
+            if (fonts.containsKey(DEFAULT_FONT)) return;
+            task = newLoadTask(appContext, DEFAULT_FONT);
+            fonts.put(DEFAULT_FONT, task);
+        }
+        FutureTask<List<BitmapFont>> bitmapTask = bitmapFontsTask(appContext);
+        new Thread(() -> {
+            task.run();
+            bitmapTask.run();
+        }, "font-preload").start();
+    }
+
+    /**
+     * 获取字体，未加载时在当前线程加载；后台预加载进行中则等待其完成
+     * @param path assets 中的字体路径
+     * @return 字体，加载失败时返回 Typeface.DEFAULT
+     */
+    public static Typeface getTypeface(Context context, String path) {
+        FutureTask<Typeface> task;
+        synchronized (fonts) {
+            task = fonts.get(path);
+            if (task == null) {
+                task = newLoadTask(context.getApplicationContext(), path);
+                fonts.put(path, task);
+            }
+        }
+        // 任务尚未被后台线程执行时直接在当前线程执行，已完成时立即返回
+        task.run();
+        try {
+            return task.get();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return Typeface.DEFAULT;
+        }
+    }
+
+    /**
+     * 获取默认字体在指定字号下的文字样式
+     */
+    public static synchronized TextStyle getTextStyle(Context context, float textSize) {
+        TextStyle style = textStyles.get(textSize);
+        if (style == null) {
+            style = new TextStyle(getTypeface(context, DEFAULT_FONT), textSize);
+            textStyles.put(textSize, style);
+        }
+        return style;
+    }
+
+    /**
+     * 挑选与网格行数最匹配的点阵字体：不超过 rows 的最高字体，都超过时取最矮的（显示时上下裁切）
+     * @return 点阵字体，assets 中没有点阵字体时返回 null
+     */
+    public static BitmapFont getBitmapFont(Context context, int rows) {
+        FutureTask<List<BitmapFont>> task = bitmapFontsTask(context.getApplicationContext());
+        task.run();
+        List<BitmapFont> list;
+        try {
+            list = task.get();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+        BitmapFont best = null;
+        for (BitmapFont font : list) {
+            int h = font.getHeight();
+            if (best == null) {
+                best = font;
+            } else if (h <= rows) {
+                if (best.getHeight() > rows || h > best.getHeight()) best = font;
+            } else if (best.getHeight() > rows && h < best.getHeight()) {
+                best = font;
+            }
+        }
+        return best;
+    }
+
+    private static synchronized FutureTask<List<BitmapFont>> bitmapFontsTask(Context context) {
+        if (bitmapFonts == null) {
+            bitmapFonts = new FutureTask<>(() -> loadBitmapFonts(context));
+        }
+        return bitmapFonts;
+    }
+
+    // 解析 assets/fonts 下全部点阵字体，单个文件损坏时跳过
+    private static List<BitmapFont> loadBitmapFonts(Context context) {
+        List<BitmapFont> result = new ArrayList<>();
+        String[] names;
+        try {
+            names = context.getAssets().list(BITMAP_FONT_DIR);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return result;
+        }
+        if (names == null) return result;
+        for (String name : names) {
+            if (!isBitmapFont(name)) continue;
+            String path = BITMAP_FONT_DIR + "/" + name;
+            try (InputStream in = context.getAssets().open(path)) {
+                result.add(BitmapFont.load(path, in));
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        return result;
+    }
+
+    private static boolean isBitmapFont(String name) {
+        String lower = name.toLowerCase();
+        for (String suffix : BITMAP_FONT_SUFFIXES) {
+            if (lower.endsWith(suffix)) return true;
+        }
+        return false;
+    }
+
+    private static FutureTask<Typeface> newLoadTask(Context context, String path) {
+        return new FutureTask<>(() -> {
+            try {
+                return Typeface.createFromAsset(context.getAssets(), path);
+            } catch (RuntimeException e) {
+                // 字体缺失或损坏时退回系统字体
+                e.printStackTrace();
+                return Typeface.DEFAULT;
+            }
+        });
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.backlight.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+import com.example.backlight.activitys.PixelDrawView;
+import com.example.backlight.data.DotMatrix;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 字形点阵缓存
+ * 每个字符单独光栅化成若干列点阵并按 (字符, 字体, 大小档位, 行数, 每点位数) 缓存，
+ * 整段文字由 TextColumnSource 按需取缓存的字形列拼接，修改或重复输入文字时几乎不再绘制。
+ * 光栅化在 ALPHA_8 位图上以 4 倍超采样进行，用一次 copyPixelsToBuffer 读回后按覆盖率取点：
+ * 1 位点阵取格子中心像素，多级亮度时取整个格子的平均覆盖率；
+ * 点阵档位直接使用点阵字体的字形（整行复制、上下居中），字体中没有的字符仍按矢量字体光栅化。
+ * 排版只需要字的步进宽度和亮点所在的列（Metrics），由光栅化后的字形得出并单独缓存，
+ * 亮点范围与实际绘制的点阵一致；字形本身留在字形缓存中，绘制时不再重复光栅化
+ */
+public class GlyphCache {
+    public static final int SUPERSAMPLE = 4;       // 光栅化时每个点对应的像素边长
+    private static final int MAX_GLYPHS = 1024;    // 缓存上限
+
+    private static GlyphCache instance;
+
+    // 键 = 字体编号(12 bit) | 每点位数(4 bit) | 大小档位(8 bit) | 行数(16 bit) | 字符(24 bit)
+    private final Map<Long, DotMatrix> glyphs = new LinkedHashMap<Long, DotMatrix>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, DotMatrix> eldest) {
+            return size() > MAX_GLYPHS;
+        }
+    };
+    // 字形的排版尺寸单独缓存，字形被淘汰后排版仍不必重新光栅化；与字形同样按 LRU 限制条数
+    private final Map<Long, Metrics> metrics = new LinkedHashMap<Long, Metrics>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Metrics> eldest) {
+            return size() > MAX_GLYPHS;
+        }
+    };
+    private final Map<String, Integer> fontIds = new HashMap<>();
+
+    // 未命中缓存时复用的绘制位图（只有覆盖率通道）及其像素缓冲
+    private Bitmap scratch;
+    private Canvas scratchCanvas;
+    private byte[] pixels;
+    private ByteBuffer pixelBuffer;
+
+    /**
+     * 字符的排版尺寸
+     */
+    public static final class Metrics {
+        public final int cols;      // 步进宽度（列），与 getGlyph 返回的点阵列数一致，组合符号等可能为 0
+        public final int inkStart;  // 第一个有亮点的列，没有亮点（空格）时为 -1
+        public final int inkEnd;    // 最后一个有亮点的列 + 1，没有亮点时为 -1
+
+        Metrics(int cols, int inkStart, int inkEnd) {
+            this.cols = cols;
+            this.inkStart = inkStart;
+            this.inkEnd = inkEnd;
+        }
+    }
+
+    private GlyphCache() {
+    }
+
+    /** 各方法均已同步，导出线程也可使用 **/
+    public static synchronized GlyphCache getInstance() {
+        if (instance == null) {
+            instance = new GlyphCache();
+        }
+        return instance;
+    }
+
+    /**
+     * 各大小档位的字号
+     * @param rows 网格行数
+     */
+    public static float textSizeFor(int sizeMode, int rows) {
+        float scaleFactor;
+        if (sizeMode == PixelDrawView.SIZE_LARGE) scaleFactor = 1.4f;
+        else if (sizeMode == PixelDrawView.SIZE_SMALL) scaleFactor = 0.9f;
+        else scaleFactor = 1.1f;
+        return rows * SUPERSAMPLE * scaleFactor;
+    }
+
+    /**
+     * 字符的步进宽度和有亮点的列范围，取自光栅化后的字形（首尾列必有亮点）
+     * @param bitsPerDot 每点位数，与取字形时一致（亮灭和多级亮度的取点方式不同，亮点范围可能差一列）
+     */
+    public synchronized Metrics getMetrics(Context context, String font, int sizeMode, int rows, int bitsPerDot,
+                                           int codePoint) {
+        long key = key(font, sizeMode, rows, bitsPerDot, codePoint);
+        Metrics m = metrics.get(key);
+        if (m == null) {
+            m = measure(getGlyph(context, font, sizeMode, rows, bitsPerDot, codePoint));
+            metrics.put(key, m);
+        }
+        return m;
+    }
+
+    /**
+     * 字符的点阵，列数与 getMetrics 的 cols 一致
+     * @param bitsPerDot 每点位数，大于 1 时按覆盖率得到多级亮度
+     * @return 点阵，宽度为 0 的字符返回 null
+     */
+    public synchronized DotMatrix getGlyph(Context context, String font, int sizeMode, int rows, int bitsPerDot,
+                                           int codePoint) {
+        long key = key(font, sizeMode, rows, bitsPerDot, codePoint);
+        DotMatrix glyph = glyphs.get(key);
+        if (glyph == null) {
+            glyph = rasterize(context, sizeMode, rows, bitsPerDot, codePoint);
+            if (glyph != null) glyphs.put(key, glyph);
+        }
+        return glyph;
+    }
+
+    private long key(String font, int sizeMode, int rows, int bitsPerDot, int codePoint) {
+        return ((long) fontId(font) << 52) | ((long) (bitsPerDot & 0xF) << 48) | ((long) (sizeMode & 0xFF) << 40)
+                | ((long) (rows & 0xFFFF) << 24) | (codePoint & 0xFFFFFF);
+    }
+
+    private int fontId(String font) {
+        Integer id = fontIds.get(font);
+        if (id == null) {
+            id = fontIds.size();
+            fontIds.put(font, id);
+        }
+        return id;
+    }
+
+    private static Metrics measure(DotMatrix glyph) {
+        if (glyph == null) return new Metrics(0, -1, -1);
+        int first = glyph.firstSetColumn();
+        return new Metrics(glyph.getCols(), first, first < 0 ? -1 : glyph.lastSetColumn() + 1);
+    }
+
+    // 把单个字符画到复用位图上并采样成点阵，列数按字符的步进宽度取整
+    private DotMatrix rasterize(Context context, int sizeMode, int rows, int bitsPerDot, int codePoint) {
+        BitmapFont bitmapFont = bitmapFontFor(context, sizeMode, rows, codePoint);
+        if (bitmapFont != null) {
+            DotMatrix src = bitmapFont.getGlyph(codePoint);
+            if (src == null || src.getCols() <= 0) return null;
+            DotMatrix placed = placeBitmapGlyph(src, rows);
+            if (bitsPerDot == 1) return placed;
+            // 点阵字体只有亮灭两级，亮点取最高亮度
+            DotMatrix glyph = new DotMatrix(rows, placed.getCols(), bitsPerDot);
+            placed.copyColumns(0, glyph, 0, placed.getCols());
+            return glyph;
+        }
+        FontRegistry.TextStyle style = FontRegistry.getTextStyle(context, textSizeFor(sizeMode, rows));
+        Paint paint = style.paint;
+        String ch = new String(Character.toChars(codePoint));
+        int glyphCols = Math.round(paint.measureText(ch) / SUPERSAMPLE);
+        if (glyphCols <= 0) return null;
+
+        int width = glyphCols * SUPERSAMPLE;
+        int height = rows * SUPERSAMPLE;
+        Canvas canvas = obtainCanvas(width, height);
+        scratch.eraseColor(Color.TRANSPARENT);
+        Paint.FontMetrics fm = style.metrics;
+        float baseline = (height - (fm.descent - fm.ascent)) / 2f - fm.ascent;
+        canvas.drawText(ch, 0, baseline, paint);
+
+        // 一次读回整张位图
+        pixelBuffer.rewind();
+        scratch.copyPixelsToBuffer(pixelBuffer);
+        int stride = scratch.getRowBytes();
+        DotMatrix glyph = new DotMatrix(rows, glyphCols, bitsPerDot);
+        if (bitsPerDot == 1) {
+            // 亮灭两级：每个点取其格子中心像素的覆盖率
+            for (int r = 0; r < rows; r++) {
+                int rowBase = (r * SUPERSAMPLE + SUPERSAMPLE / 2) * stride + SUPERSAMPLE / 2;
+                for (int c = 0; c < glyphCols; c++) {
+                    if ((pixels[rowBase + c * SUPERSAMPLE] & 0xFF) > 128) glyph.set(r, c, 1);
+                }
+            }
+            return glyph;
+        }
+        // 多级亮度：每个点取整个格子的平均覆盖率，按最高级别四舍五入
+        int maxLevel = glyph.getMaxLevel();
+        int fullCoverage = SUPERSAMPLE * SUPERSAMPLE * 255;
+        for (int r = 0; r < rows; r++) {
+            int rowBase = r * SUPERSAMPLE * stride;
+            for (int c = 0; c < glyphCols; c++) {
+                int sum = 0;
+                for (int y = 0; y < SUPERSAMPLE; y++) {
+                    int p = rowBase + y * stride + c * SUPERSAMPLE;
+                    for (int x = 0; x < SUPERSAMPLE; x++) sum += pixels[p + x] & 0xFF;
+                }
+                glyph.set(r, c, (sum * maxLevel + fullCoverage / 2) / fullCoverage);
+            }
+        }
+        return glyph;
+    }
+
+    // 点阵档位下包含该字符的点阵字体，其他档位或缺字时返回 null
+    private BitmapFont bitmapFontFor(Context context, int sizeMode, int rows, int codePoint) {
+        if (sizeMode != PixelDrawView.SIZE_PIXEL) return null;
+        BitmapFont font = FontRegistry.getBitmapFont(context, rows);
+        return font != null && font.hasGlyph(codePoint) ? font : null;
+    }
+
+    // 把点阵字形整行复制到 rows 行的点阵中，上下居中，字体比网格高时裁掉上下多出的行
+    private DotMatrix placeBitmapGlyph(DotMatrix src, int rows) {
+        int height = src.getRows();
+        if (height == rows) return src.copy();
+        DotMatrix glyph = new DotMatrix(rows, src.getCols());
+        if (height < rows) {
+            glyph.copyRows(src, 0, (rows - height) / 2, height);
+        } else {
+            glyph.copyRows(src, (height - rows) / 2, 0, rows);
+        }
+        return glyph;
+    }
+
+    // 复用的位图不够大时才重新分配
+    private Canvas obtainCanvas(int width, int height) {
+        if (scratch == null || scratch.getWidth() < width || scratch.getHeight() < height) {
+            int w = width;
+            int h = height;
+            if (scratch != null) {
+                w = Math.max(w, scratch.getWidth());
+                h = Math.max(h, scratch.getHeight());
+                scratch.recycle();
+            }
+            scratch = Bitmap.createBitmap(w, h, Bitmap.Config.ALPHA_8);
+            scratchCanvas = new Canvas(scratch);
+            pixels = new byte[scratch.getByteCount()];
+            pixelBuffer = ByteBuffer.wrap(pixels);
+        }
+        return scratchCanvas;
+    }
+}
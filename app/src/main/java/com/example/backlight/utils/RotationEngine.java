@@ -0,0 +1,113 @@
+package com.example.backlight.utils;
+
+import com.example.backlight.data.ColumnSource;
+import com.example.backlight.data.DotMatrix;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 预览旋转引擎
+ * 一屏点阵绕屏幕中心旋转：对每个角度预先算出“目标格子 → 源格子”的反向映射表并缓存，
+ * 表中的源列相对于一屏的起始列，与滚动位置无关，跑马灯滚动时仍按表取点，
+ * 旋转一帧不再分配数组，也不会出现正向映射留下的空洞
+ */
+public class RotationEngine {
+    public static final float STEP_DEGREE = 5f;                    // 界面每次旋转的角度
+    private static final int STEPS = Math.round(360f / STEP_DEGREE); // 一圈共 72 个状态
+    private static final int MAX_TABLES = STEPS;                   // 缓存上限
+    private static final int COL_BITS = 20;                        // 表项中源列所占位数
+    private static final int COL_MASK = (1 << COL_BITS) - 1;
+    private static final int COL_BIAS = 1 << (COL_BITS - 1);        // 相对源列可能为负，存入表项时加上偏置
+
+    // 表项 = (源行 << COL_BITS) | (相对起始列的源列 + COL_BIAS)，-1 表示该格旋转后没有对应的源点
+    private final Map<Integer, int[]> tables = new LinkedHashMap<Integer, int[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+            return size() > MAX_TABLES;
+        }
+    };
+
+    // 缓存表对应的一屏尺寸，变化时清空缓存
+    private int rows = -1;
+    private int cols = -1;
+
+    /**
+     * 从 startCol 开始截取一屏，绕屏幕中心旋转 degree 度后写入 out；
+     * 旋转到屏幕两侧的点取自一屏左右相邻的列
+     * @param src 完整数据源
+     * @param startCol 截取起始列；数据源比一屏长时超出边界循环取，否则超出部分为灭点
+     * @param degree 旋转角度，按 STEP_DEGREE 取整
+     * @param out 输出的一屏点阵，行数与 src 一致，位数不同时按 DotMatrix.convertLevel 换算
+     */
+    public void rotate(ColumnSource src, int startCol, float degree, DotMatrix out) {
+        int[] table = getTable(src.getRows(), out.getCols(), degree);
+        out.clear();
+        int srcMax = (1 << src.getBitsPerDot()) - 1;
+        int outMax = out.getMaxLevel();
+        int rows = out.getRows();
+        int cols = out.getCols();
+        int srcCols = src.getCols();
+        boolean wrap = srcCols > cols;
+        startCol = wrap ? Math.floorMod(startCol, srcCols) : startCol;
+        int i = 0;
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++, i++) {
+                int entry = table[i];
+                if (entry < 0) continue;
+                int srcC = startCol + (entry & COL_MASK) - COL_BIAS;
+                if (wrap) {
+                    srcC = Math.floorMod(srcC, srcCols);
+                } else if (srcC < 0 || srcC >= srcCols) {
+                    continue;
+                }
+                int v = src.get(entry >>> COL_BITS, srcC);
+                if (v != 0) out.set(r, c, DotMatrix.convertLevel(v, srcMax, outMax));
+            }
+        }
+    }
+
+    private int[] getTable(int rows, int cols, float degree) {
+        if (rows != this.rows || cols != this.cols) {
+            tables.clear();
+            this.rows = rows;
+            this.cols = cols;
+        }
+        int step = Math.floorMod(Math.round(degree / STEP_DEGREE), STEPS);
+        int[] table = tables.get(step);
+        if (table == null) {
+            table = buildTable(step * STEP_DEGREE);
+            tables.put(step, table);
+        }
+        return table;
+    }
+
+    private int[] buildTable(float degree) {
+        if (cols + rows >= COL_BIAS || rows > (Integer.MAX_VALUE >>> COL_BITS)) {
+            throw new IllegalArgumentException("grid too large to rotate: " + rows + "x" + cols);
+        }
+        int[] table = new int[rows * cols];
+        double radians = Math.toRadians(degree);
+        double cos = Math.cos(radians);
+        double sin = Math.sin(radians);
+        double centerX = (cols - 1) / 2.0;
+        double centerY = (rows - 1) / 2.0;
+
+        int i = 0;
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++, i++) {
+                // 目标格子相对屏幕中心的位置，反向旋转回源位置（列相对于一屏的起始列）
+                double dx = c - centerX;
+                double dy = r - centerY;
+                int srcC = (int) Math.round(dx * cos + dy * sin + centerX);
+                int srcR = (int) Math.round(-dx * sin + dy * cos + centerY);
+                if (srcR >= 0 && srcR < rows) {
+                    table[i] = (srcR << COL_BITS) | (srcC + COL_BIAS);
+                } else {
+                    table[i] = -1;
+                }
+            }
+        }
+        return table;
+    }
+}
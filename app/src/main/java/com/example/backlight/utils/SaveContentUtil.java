@@ -1,36 +1,52 @@
 package com.example.backlight.utils;
 
 import android.content.Context;
-import android.graphics.Bitmap;
 import android.os.Environment;
 
 import com.example.backlight.activitys.PixelDrawView;
 import com.example.backlight.data.AppDatabase;
+import com.example.backlight.data.ColumnSource;
+import com.example.backlight.data.DotMatrix;
+import com.example.backlight.data.DotPalette;
 import com.example.backlight.data.MarqueeDao;
 import com.example.backlight.data.MarqueeEntity;
 
-import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * 跑马灯保存处理类
- * 负责生成所有帧 -> 保存GIF文件 -> 保存记录到数据库
+ * 负责逐帧生成并编码GIF文件 -> 保存记录到数据库
+ * 数据库只记录跑马灯的数据源（文字的排版参数或整段点阵），不记录逐帧数据，
+ * 记录大小与帧数无关，播放时按数据源重新截取各帧
  */
 public class SaveContentUtil {
 
     /** 保存生成结果对象 */
     public static class GifResult {
         public final String gifPath;      // GIF 保存路径
-        public final String framesJson;   // 所有帧的 JSON 记录
+        public final String source;       // 数据源 JSON，见 sourceToJson
+        public final int rows;            // 点阵行数
+        public final int cols;            // 点阵列数
+        public final int bitsPerDot;      // 帧的每点位数
+        public final String palette;      // 彩色跑马灯的调色板 JSON，灰度为 null
 
-        public GifResult(String gifPath, String framesJson) {
+        public GifResult(String gifPath, String source, int rows, int cols, int bitsPerDot,
+                         String palette) {
             this.gifPath = gifPath;
-            this.framesJson = framesJson;
+            this.source = source;
+            this.rows = rows;
+            this.cols = cols;
+            this.bitsPerDot = bitsPerDot;
+            this.palette = palette;
         }
     }
 
@@ -43,55 +59,58 @@ public class SaveContentUtil {
                                                    int delayMs)
             throws Exception {
 
-        JSONArray framesArray = new JSONArray();
-        int[][] fullStates = previewView.getFullTextStatesCopy();
-        int totalCols = previewView.getTotalCols();
+        ColumnSource fullStates = previewView.getFullTextStatesCopy();
+        int totalCols = fullStates.getCols();
         int displayCols = previewView.getCols();
-        int rows = fullStates.length;
-        int frameCount = totalCols + displayCols;
-        List<Bitmap> gifFrames = new ArrayList<>();
-
-        // 生成所有帧
-        for (int offset = 0; offset < frameCount; offset++) {
-            int[][] frame = new int[rows][displayCols];
-            for (int r = 0; r < rows; r++) {
-                for (int c = 0; c < displayCols; c++) {
-                    int srcCol = (c + offset) % totalCols;
-                    frame[r][c] = fullStates[r][srcCol];
-                }
-            }
-            Bitmap bmp = previewView.renderFrameToBitmap(frame);
-            gifFrames.add(bmp);
-
-            JSONArray rowSet = new JSONArray();
-            for (int rr = 0; rr < rows; rr++) {
-                JSONArray rowJson = new JSONArray();
-                for (int cc = 0; cc < displayCols; cc++) {
-                    rowJson.put(frame[rr][cc]);
-                }
-                rowSet.put(rowJson);
-            }
-            framesArray.put(rowSet);
-        }
+        int rows = fullStates.getRows();
+        // 窗口按 totalCols 循环取列，第 totalCols 帧与首帧相同，一个周期即可无缝循环
+        int frameCount = totalCols;
+        DotPalette palette = previewView.getPalette();
 
         // 保存到APP内部目录
         File gifDir = new File(context.getExternalFilesDir(Environment.DIRECTORY_MOVIES), "marquees");
         if (!gifDir.exists()) gifDir.mkdirs();
         File gifFile = new File(gifDir, saveName + ".gif");
 
-        try (OutputStream gifOut = new FileOutputStream(gifFile)) {
+        // 导出不经过位图：印章取出一次像素，之后每帧直接由点阵状态拼出调色板下标
+        DotStamp stamp = previewView.createDotStamp();
+        if (stamp == null) throw new IOException("preview grid is not laid out yet");
+        // 调色板映射和 LZW 压缩分给各核心，按帧序写出
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService encodePool = Executors.newFixedThreadPool(threads);
+        try (OutputStream gifOut = new BufferedOutputStream(new FileOutputStream(gifFile))) {
             AnimatedGifEncoder gifEncoder = new AnimatedGifEncoder();
             gifEncoder.start(gifOut);
             gifEncoder.setRepeat(0);
             gifEncoder.setDelay(delayMs);
-            for (Bitmap frameBmp : gifFrames) {
-                gifEncoder.addFrame(frameBmp);
-                frameBmp.recycle();
+            gifEncoder.setExecutor(encodePool, threads * 2);
+            // 所有帧共用由印章颜色生成的全局调色板，省去逐帧量化和每帧的局部颜色表，
+            // 每帧只写出与上一帧不同的矩形区域
+            gifEncoder.setDeltaFrames(true);
+
+            // 首帧直接截取，之后每帧左移一列再补上最右侧的新列
+            DotMatrix frame = new DotMatrix(rows, displayCols, fullStates.getBitsPerDot());
+            fullStates.window(frame, 0);
+            for (int offset = 0; offset < frameCount; offset++) {
+                if (offset > 0) {
+                    frame.shiftLeft(1);
+                    fullStates.copyColumns((offset + displayCols - 1) % totalCols, frame, displayCols - 1, 1);
+                }
+                if (!gifEncoder.addFrame(frame, stamp)) {
+                    throw new IOException("failed to write GIF frame " + offset + ": " + gifFile);
+                }
             }
-            gifEncoder.finish();
+            if (!gifEncoder.finish()) throw new IOException("failed to finish GIF: " + gifFile);
+        } catch (Exception e) {
+            // 写了一半的文件没有用处，直接删掉
+            gifFile.delete();
+            throw e;
+        } finally {
+            encodePool.shutdownNow();
         }
 
-        return new GifResult(gifFile.getAbsolutePath(), framesArray.toString());
+        return new GifResult(gifFile.getAbsolutePath(), sourceToJson(fullStates), rows, displayCols,
+                fullStates.getBitsPerDot(), palette != null ? palette.toJson() : null);
     }
 
     /**
@@ -106,9 +125,51 @@ public class SaveContentUtil {
         dao.insert(new MarqueeEntity(
                 saveName,
                 "marquee",
-                result.framesJson,
+                null,
                 delayMs,
-                result.gifPath
+                result.gifPath,
+                result.rows,
+                result.cols,
+                result.bitsPerDot,
+                result.palette,
+                result.source
         ));
     }
+
+    /**
+     * 数据源转为 JSON：文字只记排版参数，其他数据源（手绘）把整段列存一份
+     */
+    public static String sourceToJson(ColumnSource source) throws JSONException {
+        JSONObject obj = new JSONObject();
+        obj.put("bitsPerDot", source.getBitsPerDot());
+        if (source instanceof TextColumnSource) {
+            TextColumnSource text = (TextColumnSource) source;
+            obj.put("text", text.getText());
+            obj.put("sizeMode", text.getSizeMode());
+            obj.put("rows", text.getRows());
+            obj.put("minCols", text.getMinCols());
+            obj.put("glyphGap", text.getGlyphGap());
+            obj.put("loopGap", text.getLoopGap());
+            obj.put("ink", text.getInk());
+        } else {
+            DotMatrix dots = new DotMatrix(source.getRows(), source.getCols(), source.getBitsPerDot());
+            source.window(dots, 0);
+            obj.put("dots", dots.toJsonArray());
+        }
+        return obj.toString();
+    }
+
+    /**
+     * 由 sourceToJson 的结果恢复数据源，文字按记录的参数重新排版
+     */
+    public static ColumnSource sourceFromJson(Context context, String json) throws JSONException {
+        JSONObject obj = new JSONObject(json);
+        int bitsPerDot = obj.getInt("bitsPerDot");
+        if (obj.has("text")) {
+            return TextColumnSource.obtain(context, obj.getString("text"), obj.getInt("sizeMode"),
+                    obj.getInt("rows"), obj.getInt("minCols"), obj.getInt("glyphGap"), obj.getInt("loopGap"),
+                    bitsPerDot, obj.getInt("ink"));
+        }
+        return DotMatrix.fromJsonArray(obj.getJSONArray("dots"), bitsPerDot);
+    }
 }
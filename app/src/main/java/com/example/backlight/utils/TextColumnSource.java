@@ -0,0 +1,294 @@
+package com.example.backlight.utils;
+
+import android.content.Context;
+
+import com.example.backlight.data.ColumnSource;
+import com.example.backlight.data.DotMatrix;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 文字的流式列数据源
+ * 只保存每个字的起始列，读取某段列时才从 GlyphCache 取字形拼进一个固定宽度的缓冲，
+ * 缓冲之外的列不占内存，点阵内存与文字长度无关；顺序滚动时缓冲会提前覆盖后面的列。
+ * 排版时去掉每个字左右的空白列（字距由 glyphGap 统一决定），首尾不留空列，
+ * 文字之后再补 loopGap 列作为循环滚动的间隔；排版只用 GlyphCache 缓存的字宽和亮点范围，
+ * 拼接缓冲时才取字形。
+ * 排版结果按 (文字, 大小档位, 字体, 网格尺寸, 间距, 每点位数, 颜色) 记忆，编辑区、预览和屏幕旋转后的恢复共用同一份排版
+ */
+public class TextColumnSource implements ColumnSource {
+    private static final int BUFFER_COLS = 512;              // 缓冲列数
+    private static final int LOOK_BEHIND = BUFFER_COLS / 4;  // 缓冲保留请求位置之前的列数，旋转时会向前读取
+    private static final int MAX_LAYOUTS = 16;               // 记忆的排版结果上限
+
+    private static final Map<LayoutKey, TextColumnSource> layouts =
+            new LinkedHashMap<LayoutKey, TextColumnSource>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<LayoutKey, TextColumnSource> eldest) {
+                    return size() > MAX_LAYOUTS;
+                }
+            };
+
+    private final Context context;
+    private final String text;
+    private final int sizeMode;
+    private final int rows;
+    private final int minCols;          // 最少列数（一屏的列数）
+    private final int glyphGap;         // 字与字之间的空列数
+    private final int loopGap;          // 循环滚动的间隔列数
+    private final int bitsPerDot;       // 每点位数
+    private final int ink;              // 彩色模式下文字的颜色下标，0 为灰度模式
+    private final int glyphBits;        // 取字形的每点位数，彩色模式只取亮灭
+    private final int cols;             // 总列数（循环周期）：文字宽度 + 循环间隔，不足一屏时右侧补空
+    private final int contentCols;      // 文字实际占用的列数，首尾均为有亮点的列
+    private final int[] codePoints;     // 每个字的码点
+    private final int[] offsets;        // offsets[i] = 第 i 个字的起始列，最后一项为文字总宽
+    private final int[] inkStarts;      // 第 i 个字从字形的哪一列开始取（跳过左侧空白）
+    private final int[] inkWidths;      // 第 i 个字取多少列，首尾的空白字为 0
+
+    private final DotMatrix buffer;     // 已拼好的一段列
+    private int bufferStart = 0;        // 缓冲覆盖 [bufferStart, bufferEnd)
+    private int bufferEnd = 0;
+
+    /**
+     * 获取文字的列数据源，相同参数的排版只做一次；返回的对象带独立的缓冲
+     * @param text 文字，长度不限
+     * @param sizeMode 大小档位
+     * @param rows 行数
+     * @param minCols 最少列数（一屏的列数）
+     * @param glyphGap 字与字之间的空列数
+     * @param loopGap 文字末尾到下一轮开头之间的空列数
+     * @param bitsPerDot 每点位数，大于 1 时字形带多级亮度
+     * @param ink 彩色模式下文字的调色板下标，0 表示灰度模式（按覆盖率取亮度级别）
+     */
+    public static TextColumnSource obtain(Context context, String text, int sizeMode, int rows, int minCols,
+                                          int glyphGap, int loopGap, int bitsPerDot, int ink) {
+        LayoutKey key = new LayoutKey(FontRegistry.DEFAULT_FONT, text, sizeMode, rows, minCols, glyphGap, loopGap,
+                bitsPerDot, ink);
+        TextColumnSource layout;
+        synchronized (layouts) {
+            layout = layouts.get(key);
+        }
+        if (layout == null) {
+            layout = new TextColumnSource(context, text, sizeMode, rows, minCols, glyphGap, loopGap,
+                    bitsPerDot, ink);
+            synchronized (layouts) {
+                layouts.put(key, layout);
+            }
+        }
+        return layout.copy();
+    }
+
+    private TextColumnSource(Context context, String text, int sizeMode, int rows, int minCols,
+                             int glyphGap, int loopGap, int bitsPerDot, int ink) {
+        this.context = context.getApplicationContext();
+        this.text = text;
+        this.sizeMode = sizeMode;
+        this.rows = rows;
+        this.minCols = minCols;
+        this.glyphGap = glyphGap;
+        this.loopGap = loopGap;
+        this.bitsPerDot = bitsPerDot;
+        this.ink = ink;
+        this.glyphBits = ink > 0 ? 1 : bitsPerDot;
+        codePoints = text.codePoints().toArray();
+        int n = codePoints.length;
+        offsets = new int[n + 1];
+        inkStarts = new int[n];
+        inkWidths = new int[n];
+
+        // 取每个字亮点的列范围，没有亮点的字（空格）保留其步进宽度
+        GlyphCache cache = GlyphCache.getInstance();
+        int firstInked = -1;
+        int lastInked = -1;
+        for (int i = 0; i < n; i++) {
+            GlyphCache.Metrics m = cache.getMetrics(this.context, FontRegistry.DEFAULT_FONT, sizeMode, rows,
+                    glyphBits, codePoints[i]);
+            if (m.cols <= 0) continue;
+            if (m.inkStart < 0) {
+                inkWidths[i] = m.cols;
+                continue;
+            }
+            inkStarts[i] = m.inkStart;
+            inkWidths[i] = m.inkEnd - m.inkStart;
+            if (firstInked < 0) firstInked = i;
+            lastInked = i;
+        }
+
+        // 紧密排列：首尾的空白字不占列，相邻的字之间统一留 glyphGap 列
+        boolean placed = false;
+        for (int i = 0; i < n; i++) {
+            if (i < firstInked || i > lastInked || firstInked < 0) inkWidths[i] = 0;
+            int start = offsets[i];
+            if (inkWidths[i] > 0) {
+                if (placed) start += glyphGap;
+                placed = true;
+            }
+            offsets[i] = start;
+            offsets[i + 1] = start + inkWidths[i];
+        }
+        contentCols = offsets[n];
+        cols = Math.max(minCols, contentCols > 0 ? contentCols + loopGap : 0);
+        buffer = new DotMatrix(rows, Math.min(BUFFER_COLS, cols), bitsPerDot);
+    }
+
+    // 共享排版结果，缓冲各自独立
+    private TextColumnSource(TextColumnSource other) {
+        context = other.context;
+        text = other.text;
+        sizeMode = other.sizeMode;
+        rows = other.rows;
+        minCols = other.minCols;
+        glyphGap = other.glyphGap;
+        loopGap = other.loopGap;
+        bitsPerDot = other.bitsPerDot;
+        ink = other.ink;
+        glyphBits = other.glyphBits;
+        cols = other.cols;
+        contentCols = other.contentCols;
+        codePoints = other.codePoints;
+        offsets = other.offsets;
+        inkStarts = other.inkStarts;
+        inkWidths = other.inkWidths;
+        buffer = new DotMatrix(rows, other.buffer.getCols(), bitsPerDot);
+    }
+
+    public String getText() { return text; }
+    public int getSizeMode() { return sizeMode; }
+    public int getMinCols() { return minCols; }
+    public int getGlyphGap() { return glyphGap; }
+    public int getLoopGap() { return loopGap; }
+    public int getInk() { return ink; }
+
+    /** 文字实际占用的列数，不含循环间隔和补齐一屏的空列 **/
+    public int getContentCols() { return contentCols; }
+
+    @Override
+    public int getRows() { return rows; }
+
+    @Override
+    public int getCols() { return cols; }
+
+    @Override
+    public int getBitsPerDot() { return bitsPerDot; }
+
+    @Override
+    public int get(int r, int c) {
+        if (c < bufferStart || c >= bufferEnd) fill(c);
+        return buffer.get(r, c - bufferStart);
+    }
+
+    @Override
+    public void copyColumns(int srcCol, DotMatrix dst, int dstCol, int count) {
+        if (count <= 0) return;
+        if (srcCol < 0 || srcCol + count > cols) {
+            throw new IndexOutOfBoundsException("columns out of range: " + srcCol + " x" + count);
+        }
+        while (count > 0) {
+            if (srcCol < bufferStart || srcCol >= bufferEnd) fill(srcCol);
+            int n = Math.min(count, bufferEnd - srcCol);
+            buffer.copyColumns(srcCol - bufferStart, dst, dstCol, n);
+            srcCol += n;
+            dstCol += n;
+            count -= n;
+        }
+    }
+
+    @Override
+    public TextColumnSource copy() {
+        return new TextColumnSource(this);
+    }
+
+    // 排版记忆的键
+    private static final class LayoutKey {
+        final String font;
+        final String text;
+        final int sizeMode;
+        final int rows;
+        final int cols;
+        final int glyphGap;
+        final int loopGap;
+        final int bitsPerDot;
+        final int ink;
+
+        LayoutKey(String font, String text, int sizeMode, int rows, int cols, int glyphGap, int loopGap,
+                  int bitsPerDot, int ink) {
+            this.font = font;
+            this.text = text;
+            this.sizeMode = sizeMode;
+            this.rows = rows;
+            this.cols = cols;
+            this.glyphGap = glyphGap;
+            this.loopGap = loopGap;
+            this.bitsPerDot = bitsPerDot;
+            this.ink = ink;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof LayoutKey)) return false;
+            LayoutKey k = (LayoutKey) o;
+            return sizeMode == k.sizeMode && rows == k.rows && cols == k.cols
+                    && glyphGap == k.glyphGap && loopGap == k.loopGap && bitsPerDot == k.bitsPerDot && ink == k.ink
+                    && font.equals(k.font) && text.equals(k.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(font, text, sizeMode, rows, cols, glyphGap, loopGap, bitsPerDot, ink);
+        }
+    }
+
+    // 以 col 为中心重新拼接缓冲
+    private void fill(int col) {
+        int width = buffer.getCols();
+        bufferStart = Math.max(0, Math.min(col - LOOK_BEHIND, cols - width));
+        bufferEnd = bufferStart + width;
+        buffer.clear();
+
+        int textEnd = Math.min(bufferEnd, offsets[codePoints.length]);
+        GlyphCache cache = GlyphCache.getInstance();
+        for (int i = glyphAt(bufferStart); i < codePoints.length && offsets[i] < textEnd; i++) {
+            int from = Math.max(offsets[i], bufferStart);
+            int to = Math.min(offsets[i] + inkWidths[i], bufferEnd);
+            if (from >= to) continue;
+            DotMatrix glyph = cache.getGlyph(context, FontRegistry.DEFAULT_FONT, sizeMode, rows, glyphBits,
+                    codePoints[i]);
+            if (glyph == null) continue;
+            int glyphCol = inkStarts[i] + from - offsets[i];
+            if (ink == 0) {
+                glyph.copyColumns(glyphCol, buffer, from - bufferStart, to - from);
+            } else {
+                // 彩色模式：字形的亮点写成文字颜色的下标
+                int glyphEnd = glyphCol + to - from;
+                for (int r = 0; r < rows; r++) {
+                    int c = glyph.nextSetColumn(r, glyphCol);
+                    while (c >= 0 && c < glyphEnd) {
+                        buffer.set(r, c - glyphCol + from - bufferStart, ink);
+                        c = glyph.nextSetColumn(r, c + 1);
+                    }
+                }
+            }
+        }
+    }
+
+    // 二分查找包含第 col 列的字（最后一个起始列 <= col 的字）
+    private int glyphAt(int col) {
+        int lo = 0;
+        int hi = codePoints.length - 1;
+        int found = 0;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (offsets[mid] <= col) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.backlight.utils;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.backlight.data.DotMatrix;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 后台文字排版
+ * 在单独的线程上排版文字并预先光栅化首屏用到的字形，结果回到主线程交付；
+ * 每次提交都会让之前未完成的请求作废，输入过程中只有最后一次的结果会被使用
+ */
+public class TextRasterizer {
+    // 所有视图共用一个后台线程，字形缓存本身已同步
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(
+            r -> new Thread(r, "text-raster"));
+
+    public interface Callback {
+        /** 在主线程回调 **/
+        void onRasterized(TextColumnSource source);
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger generation = new AtomicInteger(); // 请求代数，过期的请求直接丢弃
+    private Future<?> pending;
+
+    /**
+     * 提交排版请求（主线程调用）
+     * @param text 文字
+     * @param sizeMode 大小档位
+     * @param rows 行数
+     * @param cols 一屏的列数
+     * @param glyphGap 字距（列）
+     * @param loopGap 循环间隔（列）
+     * @param bitsPerDot 每点位数
+     * @param ink 彩色模式下文字的颜色下标，0 为灰度模式
+     */
+    public void submit(Context context, String text, int sizeMode, int rows, int cols,
+                       int glyphGap, int loopGap, int bitsPerDot, int ink, Callback callback) {
+        int gen = generation.incrementAndGet();
+        if (pending != null) pending.cancel(false);
+        Context appContext = context.getApplicationContext();
+        pending = executor.submit(() -> {
+            if (gen != generation.get()) return;
+            TextColumnSource source = TextColumnSource.obtain(appContext, text, sizeMode, rows, cols,
+                    glyphGap, loopGap, bitsPerDot, ink);
+            if (gen != generation.get()) return;
+            // 预先拼好居中的一屏，主线程第一次绘制时字形已在缓存中
+            int totalCols = source.getCols();
+            source.window(new DotMatrix(rows, cols, bitsPerDot), totalCols > cols ? (totalCols - cols) / 2 : 0);
+            mainHandler.post(() -> {
+                if (gen == generation.get()) callback.onRasterized(source);
+            });
+        });
+    }
+
+    /** 作废尚未交付的请求 **/
+    public void cancel() {
+        generation.incrementAndGet();
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+    }
+}
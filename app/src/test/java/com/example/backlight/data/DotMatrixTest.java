@@ -0,0 +1,286 @@
+package com.example.backlight.data;
+
+import org.json.JSONArray;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the bit-packed matrix against a plain int[][] model. Each depth uses
+ * enough columns to span several longs, so columns on both sides of a word
+ * boundary (63/64 at 1 bit, 31/32 at 2 bits, 15/16 at 4 bits, 7/8 at 8 bits)
+ * are exercised.
+ */
+public class DotMatrixTest {
+    private static final int[] DEPTHS = {1, 2, 4, 8};
+    private static final int ROWS = 3;
+
+    @Test
+    public void setGet_roundTripsEveryLevel() {
+        for (int bits : DEPTHS) {
+            int cols = colsFor(bits);
+            DotMatrix m = new DotMatrix(ROWS, cols, bits);
+            assertEquals((1 << bits) - 1, m.getMaxLevel());
+            int[][] model = fill(m, new Random(bits));
+            assertMatches(model, m);
+        }
+    }
+
+    @Test
+    public void set_clampsToMaxLevel() {
+        for (int bits : DEPTHS) {
+            DotMatrix m = new DotMatrix(1, 4, bits);
+            m.set(0, 1, 1000);
+            m.set(0, 2, -5);
+            assertEquals(m.getMaxLevel(), m.get(0, 1));
+            assertEquals(0, m.get(0, 2));
+            assertEquals(0, m.get(0, 0));
+            assertEquals(0, m.get(0, 3));
+        }
+    }
+
+    @Test
+    public void set_leavesNeighboursAcrossWordBoundary() {
+        for (int bits : DEPTHS) {
+            int boundary = 64 / bits;
+            DotMatrix m = new DotMatrix(ROWS, boundary * 2, bits);
+            m.set(1, boundary - 1, m.getMaxLevel());
+            m.set(1, boundary, 1);
+            assertEquals(m.getMaxLevel(), m.get(1, boundary - 1));
+            assertEquals(1, m.get(1, boundary));
+            assertEquals(0, m.get(1, boundary - 2));
+            assertEquals(0, m.get(1, boundary + 1));
+            assertEquals(0, m.get(0, boundary - 1));
+            assertEquals(0, m.get(2, boundary));
+            assertEquals(2, m.cardinality());
+        }
+    }
+
+    @Test
+    public void copyColumns_matchesModelAtAnyOffset() {
+        for (int bits : DEPTHS) {
+            int cols = colsFor(bits);
+            Random random = new Random(10 + bits);
+            DotMatrix src = new DotMatrix(ROWS, cols, bits);
+            int[][] srcModel = fill(src, random);
+            for (int n = 0; n < 200; n++) {
+                DotMatrix dst = new DotMatrix(ROWS, cols, bits);
+                int[][] dstModel = fill(dst, random);
+                int count = random.nextInt(cols + 1);
+                int srcCol = random.nextInt(cols - count + 1);
+                int dstCol = random.nextInt(cols - count + 1);
+                src.copyColumns(srcCol, dst, dstCol, count);
+                for (int r = 0; r < ROWS; r++) {
+                    System.arraycopy(srcModel[r], srcCol, dstModel[r], dstCol, count);
+                }
+                assertMatches(dstModel, dst);
+            }
+            assertMatches(srcModel, src);
+        }
+    }
+
+    @Test
+    public void copyColumns_convertsBetweenDepths() {
+        DotMatrix gray2 = new DotMatrix(1, 4, 2);
+        for (int c = 0; c < 4; c++) gray2.set(0, c, c);
+        DotMatrix gray4 = new DotMatrix(1, 4, 4);
+        gray2.copyColumns(0, gray4, 0, 4);
+        assertEquals(0, gray4.get(0, 0));
+        assertEquals(5, gray4.get(0, 1));
+        assertEquals(10, gray4.get(0, 2));
+        assertEquals(15, gray4.get(0, 3));
+
+        // palette indices keep their value and are clamped, never scaled
+        DotMatrix palette = new DotMatrix(1, 3, 8);
+        palette.set(0, 0, 1);
+        palette.set(0, 1, 2);
+        palette.set(0, 2, 200);
+        DotMatrix back = new DotMatrix(1, 3, 2);
+        palette.copyColumns(0, back, 0, 3);
+        assertEquals(1, back.get(0, 0));
+        assertEquals(2, back.get(0, 1));
+        assertEquals(3, back.get(0, 2));
+    }
+
+    @Test
+    public void convertLevel_scalesGrayAndKeepsPaletteIndex() {
+        assertEquals(15, DotMatrix.convertLevel(3, 3, 15));
+        assertEquals(0, DotMatrix.convertLevel(7, 15, 1));
+        assertEquals(1, DotMatrix.convertLevel(8, 15, 1));
+        assertEquals(5, DotMatrix.convertLevel(5, 0xFF, 15));
+        assertEquals(15, DotMatrix.convertLevel(200, 0xFF, 15));
+        assertEquals(3, DotMatrix.convertLevel(3, 3, 0xFF));
+    }
+
+    @Test
+    public void window_wrapsPastTheLastColumn() {
+        for (int bits : DEPTHS) {
+            int cols = colsFor(bits);
+            DotMatrix src = new DotMatrix(ROWS, cols, bits);
+            int[][] srcModel = fill(src, new Random(15 + bits));
+            DotMatrix dst = new DotMatrix(ROWS, 70, bits);
+            for (int start = -3; start < cols + 3; start += 7) {
+                src.window(dst, start);
+                for (int r = 0; r < ROWS; r++) {
+                    for (int c = 0; c < dst.getCols(); c++) {
+                        assertEquals(srcModel[r][Math.floorMod(start + c, cols)], dst.get(r, c));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void copyRows_copiesWholeRows() {
+        for (int bits : DEPTHS) {
+            int cols = colsFor(bits);
+            DotMatrix src = new DotMatrix(ROWS, cols, bits);
+            int[][] srcModel = fill(src, new Random(20 + bits));
+            DotMatrix dst = new DotMatrix(ROWS + 2, cols, bits);
+            dst.copyRows(src, 1, 3, 2);
+            int[][] dstModel = new int[ROWS + 2][cols];
+            dstModel[3] = srcModel[1].clone();
+            dstModel[4] = srcModel[2].clone();
+            assertMatches(dstModel, dst);
+        }
+    }
+
+    @Test
+    public void shiftLeftAndClearColumns_matchModel() {
+        for (int bits : DEPTHS) {
+            int cols = colsFor(bits);
+            Random random = new Random(30 + bits);
+            for (int n = 0; n <= cols; n += 1 + random.nextInt(5)) {
+                DotMatrix m = new DotMatrix(ROWS, cols, bits);
+                int[][] model = fill(m, random);
+                m.shiftLeft(n);
+                for (int[] row : model) {
+                    System.arraycopy(row, n, row, 0, cols - n);
+                    Arrays.fill(row, cols - n, cols, 0);
+                }
+                assertMatches(model, m);
+
+                int c = random.nextInt(cols);
+                m.clearColumn(c);
+                for (int[] row : model) row[c] = 0;
+                assertMatches(model, m);
+
+                int from = random.nextInt(cols);
+                int count = random.nextInt(cols - from + 1);
+                m.clearColumns(from, count);
+                for (int[] row : model) Arrays.fill(row, from, from + count, 0);
+                assertMatches(model, m);
+            }
+        }
+    }
+
+    @Test
+    public void columnSearch_findsDotsOnWordBoundaries() {
+        for (int bits : DEPTHS) {
+            int boundary = 64 / bits;
+            DotMatrix m = new DotMatrix(ROWS, boundary * 2 + 3, bits);
+            assertEquals(-1, m.firstSetColumn());
+            assertEquals(-1, m.lastSetColumn());
+            assertEquals(-1, m.nextSetColumn(0, 0));
+
+            m.set(2, boundary, 1);
+            m.set(0, boundary - 1, 1);
+            assertEquals(boundary - 1, m.firstSetColumn());
+            assertEquals(boundary, m.lastSetColumn());
+            assertEquals(boundary - 1, m.nextSetColumn(0, 0));
+            assertEquals(-1, m.nextSetColumn(0, boundary));
+            assertEquals(boundary, m.nextSetColumn(2, boundary));
+
+            DotMatrix other = m.copy();
+            assertTrue(other.contentEquals(m));
+            assertEquals(-1, m.nextDiffColumn(other, 1, 0));
+            other.set(1, boundary * 2, m.getMaxLevel());
+            assertFalse(other.contentEquals(m));
+            assertEquals(boundary * 2, m.nextDiffColumn(other, 1, 0));
+            assertEquals(boundary * 2, m.nextDiffColumn(other, 1, boundary * 2));
+            assertEquals(-1, m.nextDiffColumn(other, 1, boundary * 2 + 1));
+        }
+    }
+
+    @Test
+    public void cardinalityAndIsEmpty_countLitDots() {
+        for (int bits : DEPTHS) {
+            DotMatrix m = new DotMatrix(ROWS, colsFor(bits), bits);
+            int[][] model = fill(m, new Random(40 + bits));
+            int lit = 0;
+            for (int[] row : model) {
+                for (int v : row) if (v != 0) lit++;
+            }
+            assertEquals(lit, m.cardinality());
+            assertFalse(m.isEmpty());
+            m.clear();
+            assertEquals(0, m.cardinality());
+            assertTrue(m.isEmpty());
+        }
+    }
+
+    @Test
+    public void json_roundTripsEveryDepth() throws Exception {
+        for (int bits : DEPTHS) {
+            DotMatrix m = new DotMatrix(ROWS, colsFor(bits), bits);
+            int[][] model = fill(m, new Random(50 + bits));
+            model[0][0] = m.getMaxLevel();  // so the depth can be inferred from the values
+            m.set(0, 0, m.getMaxLevel());
+
+            JSONArray json = new JSONArray(m.toJsonArray().toString());
+            DotMatrix inferred = DotMatrix.fromJsonArray(json);
+            assertEquals(bits, inferred.getBitsPerDot());
+            assertMatches(model, inferred);
+            assertTrue(DotMatrix.fromJsonArray(json, bits).contentEquals(m));
+        }
+    }
+
+    @Test
+    public void framesFromJson_sharesOneDepth() throws Exception {
+        DotMatrix bright = new DotMatrix(2, 5, 4);
+        bright.set(1, 4, 9);
+        DotMatrix dim = new DotMatrix(2, 5, 4);
+        dim.set(0, 0, 1);
+        JSONArray frames = new JSONArray();
+        frames.put(dim.toJsonArray());
+        frames.put(bright.toJsonArray());
+
+        List<DotMatrix> parsed = DotMatrix.framesFromJson(new JSONArray(frames.toString()));
+        assertEquals(2, parsed.size());
+        assertEquals(4, parsed.get(0).getBitsPerDot());
+        assertEquals(4, parsed.get(1).getBitsPerDot());
+        assertEquals(1, parsed.get(0).get(0, 0));
+        assertEquals(9, parsed.get(1).get(1, 4));
+    }
+
+    // two full words per row plus a partial one
+    private static int colsFor(int bits) {
+        return 64 / bits * 2 + 5;
+    }
+
+    private static int[][] fill(DotMatrix m, Random random) {
+        int[][] model = new int[m.getRows()][m.getCols()];
+        for (int r = 0; r < m.getRows(); r++) {
+            for (int c = 0; c < m.getCols(); c++) {
+                int v = random.nextInt(3) == 0 ? 0 : random.nextInt(m.getMaxLevel() + 1);
+                m.set(r, c, v);
+                model[r][c] = v;
+            }
+        }
+        return model;
+    }
+
+    private static void assertMatches(int[][] model, DotMatrix m) {
+        assertEquals(model.length, m.getRows());
+        for (int r = 0; r < model.length; r++) {
+            assertEquals(model[r].length, m.getCols());
+            for (int c = 0; c < model[r].length; c++) {
+                assertEquals(model[r][c], m.get(r, c));
+            }
+        }
+    }
+}
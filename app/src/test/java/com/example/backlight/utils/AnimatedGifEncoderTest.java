@@ -0,0 +1,220 @@
+package com.example.backlight.utils;
+
+import com.example.backlight.data.DotMatrix;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds frames as RGB pixel arrays or as dot frames through a DotStamp, so
+ * no Bitmap is involved and the test runs on the host JVM.
+ */
+public class AnimatedGifEncoderTest {
+    private static final int WIDTH = 23;
+    private static final int HEIGHT = 11;
+    private static final int[] COLORS = {0x808080, 0x000000, 0xFFFFFF, 0xFF0000, 0x00FF00};
+    private static final int ROWS = 7;
+    private static final int COLS = 13;
+    private static final float CELL = 3.4f;  // fractional cell size, as on a real screen
+
+    @Test
+    public void parallelEncoding_matchesSerialBytesWithGlobalPalette() throws Exception {
+        assertParallelMatchesSerial(false);
+    }
+
+    @Test
+    public void parallelEncoding_matchesSerialBytesWithFixedPalette() throws Exception {
+        assertParallelMatchesSerial(true);
+    }
+
+    @Test
+    public void reusedEncoder_matchesFreshEncoder() throws Exception {
+        List<int[]> frames = createFrames();
+        AnimatedGifEncoder encoder = new AnimatedGifEncoder();
+        byte[] first = encode(encoder, frames, false, null);
+        byte[] second = encode(encoder, frames, false, null);
+        assertArrayEquals(first, second);
+    }
+
+    @Test
+    public void dotStamp_parallelEncodingMatchesSerialBytes() throws Exception {
+        DotStamp stamp = createStamp();
+        List<DotMatrix> frames = createDotFrames();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            byte[] serial = encode(new AnimatedGifEncoder(), stamp, frames, null);
+            byte[] parallel = encode(new AnimatedGifEncoder(), stamp, frames, pool);
+            assertTrue(serial.length > 0);
+            assertArrayEquals(serial, parallel);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void dotStamp_reusedEncoderMatchesFreshEncoder() throws Exception {
+        DotStamp stamp = createStamp();
+        List<DotMatrix> frames = createDotFrames();
+        AnimatedGifEncoder encoder = new AnimatedGifEncoder();
+        byte[] first = encode(encoder, stamp, frames, null);
+        byte[] second = encode(encoder, stamp, frames, null);
+        assertArrayEquals(first, second);
+    }
+
+    @Test
+    public void cropFrame_keepsChangedRectangle() {
+        AnimatedGifEncoder encoder = new AnimatedGifEncoder();
+        encoder.setSize(4, 3);
+        encoder.deltaTransIndex = 9;
+        byte[] prev = new byte[12];
+        byte[] cur = prev.clone();
+        cur[1 * 4 + 1] = 5;
+        cur[2 * 4 + 2] = 6;
+
+        AnimatedGifEncoder.EncodedFrame f = encoder.cropFrame(cur, prev, 10, 20);
+        assertTrue(f.delta);
+        assertEquals(11, f.x);
+        assertEquals(21, f.y);
+        assertEquals(2, f.width);
+        assertEquals(2, f.height);
+        assertArrayEquals(new byte[] {5, 9, 9, 6}, f.pixels);
+        assertSame(cur, f.indexed);
+    }
+
+    @Test
+    public void cropFrame_unchangedFrameKeepsOnePixel() {
+        AnimatedGifEncoder encoder = new AnimatedGifEncoder();
+        encoder.setSize(4, 3);
+        encoder.deltaTransIndex = 9;
+        byte[] prev = new byte[12];
+
+        AnimatedGifEncoder.EncodedFrame f = encoder.cropFrame(prev.clone(), prev, 0, 0);
+        assertTrue(f.delta);
+        assertEquals(1, f.width);
+        assertEquals(1, f.height);
+        assertArrayEquals(new byte[] {9}, f.pixels);
+    }
+
+    @Test
+    public void cropFrame_withoutPreviousKeepsWholeFrame() {
+        AnimatedGifEncoder encoder = new AnimatedGifEncoder();
+        encoder.setSize(4, 3);
+        byte[] cur = new byte[12];
+
+        AnimatedGifEncoder.EncodedFrame f = encoder.cropFrame(cur, null, 0, 0);
+        assertFalse(f.delta);
+        assertEquals(4, f.width);
+        assertEquals(3, f.height);
+        assertSame(cur, f.pixels);
+    }
+
+    private static void assertParallelMatchesSerial(boolean fixedPalette) {
+        List<int[]> frames = createFrames();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            byte[] serial = encode(new AnimatedGifEncoder(), frames, fixedPalette, null);
+            byte[] parallel = encode(new AnimatedGifEncoder(), frames, fixedPalette, pool);
+            assertTrue(serial.length > 0);
+            assertArrayEquals(serial, parallel);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static byte[] encode(AnimatedGifEncoder encoder, List<int[]> frames, boolean fixedPalette,
+                                 ExecutorService pool) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(encoder.start(out));
+        encoder.setSize(WIDTH, HEIGHT);
+        encoder.setRepeat(0);
+        encoder.setDelay(100);
+        encoder.setPalette(fixedPalette ? COLORS : null);
+        encoder.setGlobalPalette(true);
+        encoder.setDeltaFrames(true);
+        encoder.setExecutor(pool, 8);
+        for (int[] frame : frames) {
+            assertTrue(encoder.addPixels(frame));
+        }
+        assertTrue(encoder.finish());
+        return out.toByteArray();
+    }
+
+    // mostly palette colors, with a few off-palette pixels that map to their closest entry
+    private static List<int[]> createFrames() {
+        Random random = new Random(3);
+        List<int[]> frames = new ArrayList<>();
+        int[] rgb = new int[WIDTH * HEIGHT];
+        Arrays.fill(rgb, 0xFF000000 | COLORS[0]);
+        for (int f = 0; f < 40; f++) {
+            for (int k = 0; k < 6; k++) {
+                int color = k == 0 && f > 0 ? random.nextInt(0x1000000) : COLORS[random.nextInt(COLORS.length)];
+                rgb[random.nextInt(rgb.length)] = 0xFF000000 | color;
+            }
+            frames.add(rgb.clone());
+        }
+        return frames;
+    }
+
+    private static byte[] encode(AnimatedGifEncoder encoder, DotStamp stamp, List<DotMatrix> frames,
+                                 ExecutorService pool) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(encoder.start(out));
+        encoder.setRepeat(0);
+        encoder.setDelay(100);
+        encoder.setDeltaFrames(true);
+        encoder.setExecutor(pool, 8);
+        // the caller reuses one frame buffer, as the export loop does
+        DotMatrix work = new DotMatrix(ROWS, COLS, 2);
+        for (DotMatrix frame : frames) {
+            frame.copyColumns(0, work, 0, COLS);
+            assertTrue(encoder.addFrame(work, stamp));
+        }
+        assertTrue(encoder.finish());
+        return out.toByteArray();
+    }
+
+    private static List<DotMatrix> createDotFrames() {
+        Random random = new Random(3);
+        List<DotMatrix> frames = new ArrayList<>();
+        DotMatrix m = new DotMatrix(ROWS, COLS, 2);
+        for (int f = 0; f < 40; f++) {
+            for (int k = 0; k < 5; k++) {
+                m.set(random.nextInt(ROWS), random.nextInt(COLS), random.nextInt(4));
+            }
+            frames.add(m.copy());
+        }
+        return frames;
+    }
+
+    private static DotStamp createStamp() {
+        Random random = new Random(7);
+        int tile = (int) Math.ceil(CELL);
+        int width = (int) (CELL * COLS);
+        int height = (int) (CELL * ROWS);
+        int[] background = new int[width * height];
+        for (int i = 0; i < background.length; i++) {
+            background[i] = 0xFF808080 - (random.nextInt(3) << 16);
+        }
+        int[][] tiles = new int[4][];
+        for (int v = 1; v < tiles.length; v++) {
+            tiles[v] = new int[tile * tile];
+            for (int i = 0; i < tiles[v].length; i++) {
+                tiles[v][i] = 0xFF000000 | (v * 60 + random.nextInt(4));
+            }
+        }
+        int[] cellLeft = new int[COLS];
+        for (int c = 0; c < COLS; c++) cellLeft[c] = Math.round(CELL * c);
+        int[] cellTop = new int[ROWS];
+        for (int r = 0; r < ROWS; r++) cellTop[r] = Math.round(CELL * r);
+        return new DotStamp(width, height, tile, background, tiles, cellLeft, cellTop, false);
+    }
+}
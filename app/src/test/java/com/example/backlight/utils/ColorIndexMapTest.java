@@ -0,0 +1,41 @@
+package com.example.backlight.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ColorIndexMapTest {
+    @Test
+    public void get_absentColorReturnsMinusOne() {
+        ColorIndexMap map = new ColorIndexMap(4);
+        assertEquals(-1, map.get(0x123456));
+        assertEquals(-1, map.get(0));
+    }
+
+    @Test
+    public void put_blackIsAValidKey() {
+        ColorIndexMap map = new ColorIndexMap(4);
+        map.put(0x000000, 3);
+        assertEquals(3, map.get(0x000000));
+    }
+
+    @Test
+    public void put_replacesExistingIndex() {
+        ColorIndexMap map = new ColorIndexMap(4);
+        map.put(0xFF0000, 1);
+        map.put(0xFF0000, 2);
+        assertEquals(2, map.get(0xFF0000));
+    }
+
+    @Test
+    public void put_keepsEntriesWhenGrowing() {
+        ColorIndexMap map = new ColorIndexMap(1);
+        for (int i = 0; i < 5000; i++) {
+            map.put(i * 3331 & 0xFFFFFF, i & 0xFF);
+        }
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i & 0xFF, map.get(i * 3331 & 0xFFFFFF));
+        }
+        assertEquals(-1, map.get(0xFFFFFF));
+    }
+}